@@ -1,21 +1,106 @@
 package thinkifytest;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.math.BigDecimal;
 
+final class Money {
+    static final int MINOR_UNIT_SCALE = 2;
+
+    private Money() {
+    }
+
+    static long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.movePointRight(MINOR_UNIT_SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must fit in minor units: " + amount);
+        }
+    }
+
+    static BigDecimal fromMinorUnits(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_UNIT_SCALE);
+    }
+
+    static long lineTotal(long unitPrice, int quantity) {
+        return Math.multiplyExact(unitPrice, (long) quantity);
+    }
+
+    static long add(long total, long amount) {
+        return Math.addExact(total, amount);
+    }
+}
+
 class MenuItem {
     private String name;
-    private BigDecimal price;
+    private volatile long priceInMinorUnits;
 
     public MenuItem(String name, BigDecimal price) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Menu item name cannot be null or empty");
         }
+        this.name = name;
+        this.priceInMinorUnits = validatePrice(price);
+    }
+
+    private static long validatePrice(BigDecimal price) {
         if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Menu item price must be positive");
         }
-        this.name = name;
-        this.price = price;
+        return Money.toMinorUnits(price);
     }
 
     public String getName() {
@@ -23,14 +108,15 @@ class MenuItem {
     }
 
     public BigDecimal getPrice() {
-        return price;
+        return Money.fromMinorUnits(priceInMinorUnits);
+    }
+
+    public long getPriceInMinorUnits() {
+        return priceInMinorUnits;
     }
 
     public void setPrice(BigDecimal price) {
-        if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Menu item price must be positive");
-        }
-        this.price = price;
+        this.priceInMinorUnits = validatePrice(price);
     }
 
     @Override
@@ -49,14 +135,173 @@ class MenuItem {
     }
 }
 
+class RestaurantBitmap {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int WORDS_PER_CHUNK = 1 << (CHUNK_SHIFT - 6);
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private volatile AtomicLongArray[] chunks;
+    private final AtomicInteger cardinality;
+
+    public RestaurantBitmap() {
+        this.chunks = new AtomicLongArray[0];
+        this.cardinality = new AtomicInteger();
+    }
+
+    private RestaurantBitmap(AtomicLongArray[] chunks, int cardinality) {
+        this.chunks = chunks;
+        this.cardinality = new AtomicInteger(cardinality);
+    }
+
+    private AtomicLongArray chunkFor(int chunkIndex) {
+        AtomicLongArray[] current = chunks;
+        if (chunkIndex < current.length && current[chunkIndex] != null) {
+            return current[chunkIndex];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (chunkIndex < current.length && current[chunkIndex] != null) {
+                return current[chunkIndex];
+            }
+            AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(chunkIndex + 1, current.length));
+            AtomicLongArray chunk = new AtomicLongArray(WORDS_PER_CHUNK);
+            grown[chunkIndex] = chunk;
+            chunks = grown;
+            return chunk;
+        }
+    }
+
+    public void set(int bit) {
+        AtomicLongArray chunk = chunkFor(bit >>> CHUNK_SHIFT);
+        int word = (bit & CHUNK_MASK) >>> 6;
+        long mask = 1L << bit;
+        long prev = chunk.getAndAccumulate(word, mask, (w, m) -> w | m);
+        if ((prev & mask) == 0) {
+            cardinality.incrementAndGet();
+        }
+    }
+
+    public void clear(int bit) {
+        AtomicLongArray[] current = chunks;
+        int chunkIndex = bit >>> CHUNK_SHIFT;
+        if (chunkIndex >= current.length || current[chunkIndex] == null) {
+            return;
+        }
+        int word = (bit & CHUNK_MASK) >>> 6;
+        long mask = 1L << bit;
+        long prev = current[chunkIndex].getAndAccumulate(word, mask, (w, m) -> w & ~m);
+        if ((prev & mask) != 0) {
+            cardinality.decrementAndGet();
+        }
+    }
+
+    public boolean get(int bit) {
+        AtomicLongArray[] current = chunks;
+        int chunkIndex = bit >>> CHUNK_SHIFT;
+        if (chunkIndex >= current.length || current[chunkIndex] == null) {
+            return false;
+        }
+        return (current[chunkIndex].get((bit & CHUNK_MASK) >>> 6) & (1L << bit)) != 0;
+    }
+
+    public int cardinality() {
+        return cardinality.get();
+    }
+
+    public RestaurantBitmap copy() {
+        AtomicLongArray[] current = chunks;
+        AtomicLongArray[] copied = new AtomicLongArray[current.length];
+        int count = 0;
+        for (int i = 0; i < current.length; i++) {
+            AtomicLongArray chunk = current[i];
+            if (chunk == null) {
+                continue;
+            }
+            long[] words = new long[WORDS_PER_CHUNK];
+            long any = 0;
+            for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                words[w] = chunk.get(w);
+                any |= words[w];
+                count += Long.bitCount(words[w]);
+            }
+            if (any != 0) {
+                copied[i] = new AtomicLongArray(words);
+            }
+        }
+        return new RestaurantBitmap(copied, count);
+    }
+
+    public void and(RestaurantBitmap other) {
+        AtomicLongArray[] current = chunks;
+        AtomicLongArray[] otherChunks = other.chunks;
+        int count = 0;
+        for (int i = 0; i < current.length; i++) {
+            AtomicLongArray chunk = current[i];
+            if (chunk == null) {
+                continue;
+            }
+            AtomicLongArray otherChunk = i < otherChunks.length ? otherChunks[i] : null;
+            if (otherChunk == null) {
+                current[i] = null;
+                continue;
+            }
+            long any = 0;
+            for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                long word = chunk.get(w) & otherChunk.get(w);
+                chunk.set(w, word);
+                any |= word;
+                count += Long.bitCount(word);
+            }
+            if (any == 0) {
+                current[i] = null;
+            }
+        }
+        cardinality.set(count);
+    }
+
+    public void forEach(IntConsumer action) {
+        AtomicLongArray[] current = chunks;
+        for (int i = 0; i < current.length; i++) {
+            AtomicLongArray chunk = current[i];
+            if (chunk == null) {
+                continue;
+            }
+            int base = i << CHUNK_SHIFT;
+            for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                long word = chunk.get(w);
+                while (word != 0) {
+                    action.accept(base + (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+}
+
 class Restaurant {
+    public static final long INELIGIBLE = -1;
+
     private String name;
     private int maxOrders;
     private Map<String, MenuItem> menu;
     private double rating;
-    private int currentOrderCount;
+    private AtomicInteger currentOrderCount;
+    private int ordinal;
+    private RestaurantBitmap availability;
+
+    public Restaurant(String name, int maxOrders, double rating, int ordinal, RestaurantBitmap availability) {
+        validate(name, maxOrders, rating);
+        this.name = name;
+        this.maxOrders = maxOrders;
+        this.rating = rating;
+        this.menu = new ConcurrentHashMap<>();
+        this.currentOrderCount = new AtomicInteger();
+        this.ordinal = ordinal;
+        this.availability = availability;
+        availability.set(ordinal);
+    }
 
-    public Restaurant(String name, int maxOrders, double rating) {
+    static void validate(String name, int maxOrders, double rating) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Restaurant name cannot be null or empty");
         }
@@ -66,11 +311,6 @@ class Restaurant {
         if (rating < 0 || rating > 5) {
             throw new IllegalArgumentException("Rating must be between 0 and 5");
         }
-        this.name = name;
-        this.maxOrders = maxOrders;
-        this.rating = rating;
-        this.menu = new HashMap<>();
-        this.currentOrderCount = 0;
     }
 
     public void addMenuItem(String itemName, BigDecimal price) {
@@ -94,30 +334,99 @@ class Restaurant {
     }
 
     public BigDecimal calculateTotalCost(Map<String, Integer> orderItems) {
-        BigDecimal total = BigDecimal.ZERO;
+        return Money.fromMinorUnits(calculateTotalCostInMinorUnits(orderItems));
+    }
+
+    public long calculateTotalCostInMinorUnits(Map<String, Integer> orderItems) {
+        long total = priceOrderInMinorUnits(orderItems);
+        if (total == INELIGIBLE) {
+            throw new IllegalArgumentException("Restaurant " + name + " does not serve all ordered items");
+        }
+        return total;
+    }
+
+    public long priceOrderInMinorUnits(Map<String, Integer> orderItems) {
+        return priceOrderInMinorUnits(orderItems, Long.MAX_VALUE);
+    }
+
+    public long priceOrderInMinorUnits(Map<String, Integer> orderItems, long bound) {
+        long total = 0;
         for (Map.Entry<String, Integer> entry : orderItems.entrySet()) {
             MenuItem item = menu.get(entry.getKey());
-            total = total.add(item.getPrice().multiply(BigDecimal.valueOf(entry.getValue())));
+            if (item == null) {
+                return INELIGIBLE;
+            }
+            total = Money.add(total, Money.lineTotal(item.getPriceInMinorUnits(), entry.getValue()));
+            if (total > bound) {
+                return INELIGIBLE;
+            }
         }
         return total;
     }
 
+    public long getItemPriceInMinorUnits(String itemName) {
+        MenuItem item = menu.get(itemName);
+        return item != null ? item.getPriceInMinorUnits() : INELIGIBLE;
+    }
+
     public boolean canAcceptOrder() {
-        return currentOrderCount < maxOrders;
+        return currentOrderCount.get() < maxOrders;
+    }
+
+    public boolean tryAcceptOrder() {
+        while (true) {
+            int count = currentOrderCount.get();
+            if (count >= maxOrders) {
+                return false;
+            }
+            if (currentOrderCount.compareAndSet(count, count + 1)) {
+                if (count + 1 == maxOrders) {
+                    refreshAvailability();
+                }
+                return true;
+            }
+        }
     }
 
     public void acceptOrder() {
-        if (!canAcceptOrder()) {
+        if (!tryAcceptOrder()) {
             throw new IllegalStateException("Restaurant has reached maximum order capacity");
         }
-        currentOrderCount++;
     }
 
     public void completeOrder() {
-        if (currentOrderCount <= 0) {
-            throw new IllegalStateException("No orders to complete");
+        while (true) {
+            int count = currentOrderCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("No orders to complete");
+            }
+            if (currentOrderCount.compareAndSet(count, count - 1)) {
+                if (count == maxOrders) {
+                    refreshAvailability();
+                }
+                return;
+            }
         }
-        currentOrderCount--;
+    }
+
+    void restoreOrderCount(int count) {
+        if (count < 0 || count > maxOrders) {
+            throw new IllegalStateException("Restored order count out of range for " + name + ": " + count);
+        }
+        currentOrderCount.set(count);
+        refreshAvailability();
+    }
+
+    private void refreshAvailability() {
+        int count;
+        do {
+            count = currentOrderCount.get();
+            if (count < maxOrders) {
+                availability.set(ordinal);
+            } else {
+                availability.clear(ordinal);
+            }
+        } while (count != currentOrderCount.get());
     }
 
     public String getName() {
@@ -133,7 +442,11 @@ class Restaurant {
     }
 
     public int getCurrentOrderCount() {
-        return currentOrderCount;
+        return currentOrderCount.get();
+    }
+
+    public int getOrdinal() {
+        return ordinal;
     }
 
     public Map<String, MenuItem> getMenu() {
@@ -145,16 +458,128 @@ enum OrderStatus {
     PENDING, ACCEPTED, COMPLETED, REJECTED
 }
 
+interface OrderIdGenerator {
+    long nextId();
+
+    default void advancePast(long orderId) {
+    }
+}
+
+class SequentialOrderIdGenerator implements OrderIdGenerator {
+    private final AtomicLong next;
+
+    public SequentialOrderIdGenerator() {
+        this(1);
+    }
+
+    public SequentialOrderIdGenerator(long firstId) {
+        if (firstId <= 0) {
+            throw new IllegalArgumentException("First order id must be positive");
+        }
+        this.next = new AtomicLong(firstId);
+    }
+
+    @Override
+    public long nextId() {
+        return next.getAndIncrement();
+    }
+
+    @Override
+    public void advancePast(long orderId) {
+        next.accumulateAndGet(orderId + 1, Math::max);
+    }
+}
+
+class BlockOrderIdGenerator implements OrderIdGenerator {
+    private final AtomicLong nextBlockStart;
+    private final int blockSize;
+    private final ThreadLocal<long[]> threadBlock;
+
+    public BlockOrderIdGenerator(int blockSize) {
+        this(1, blockSize);
+    }
+
+    public BlockOrderIdGenerator(long firstId, int blockSize) {
+        if (firstId <= 0) {
+            throw new IllegalArgumentException("First order id must be positive");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.nextBlockStart = new AtomicLong(firstId);
+        this.blockSize = blockSize;
+        this.threadBlock = ThreadLocal.withInitial(() -> new long[] { 0, 0 });
+    }
+
+    @Override
+    public long nextId() {
+        long[] block = threadBlock.get();
+        if (block[0] == block[1]) {
+            block[0] = nextBlockStart.getAndAdd(blockSize);
+            block[1] = block[0] + blockSize;
+        }
+        return block[0]++;
+    }
+
+    @Override
+    public void advancePast(long orderId) {
+        nextBlockStart.accumulateAndGet(orderId + 1, Math::max);
+    }
+}
+
+class SnowflakeOrderIdGenerator implements OrderIdGenerator {
+    static final long DEFAULT_EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final long epochMillis;
+    private final AtomicLong lastState;
+
+    public SnowflakeOrderIdGenerator(long nodeId) {
+        this(nodeId, DEFAULT_EPOCH_MILLIS);
+    }
+
+    public SnowflakeOrderIdGenerator(long nodeId, long epochMillis) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        if (epochMillis > System.currentTimeMillis()) {
+            throw new IllegalArgumentException("Epoch cannot be in the future");
+        }
+        this.nodeId = nodeId;
+        this.epochMillis = epochMillis;
+        this.lastState = new AtomicLong();
+    }
+
+    @Override
+    public long nextId() {
+        long timestampState = (System.currentTimeMillis() - epochMillis) << SEQUENCE_BITS;
+        long state = lastState.accumulateAndGet(timestampState, (last, now) -> Math.max(last + 1, now));
+        long timestamp = state >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (state & SEQUENCE_MASK);
+    }
+}
+
 class Order {
-    private static int orderCounter = 1;
-    private int orderId;
+    private long orderId;
     private String userName;
     private Map<String, Integer> items;
-    private OrderStatus status;
-    private Restaurant assignedRestaurant;
-    private BigDecimal totalCost;
+    private volatile OrderStatus status;
+    private volatile Restaurant assignedRestaurant;
+    private volatile long totalCostInMinorUnits;
+
+    public Order(long orderId, String userName, Map<String, Integer> items) {
+        validate(userName, items);
+        this.orderId = orderId;
+        this.userName = userName;
+        this.items = new HashMap<>(items);
+        this.status = OrderStatus.PENDING;
+    }
 
-    public Order(String userName, Map<String, Integer> items) {
+    static void validate(String userName, Map<String, Integer> items) {
         if (userName == null || userName.trim().isEmpty()) {
             throw new IllegalArgumentException("User name cannot be null or empty");
         }
@@ -165,20 +590,32 @@ class Order {
             if (qty <= 0)
                 throw new IllegalArgumentException("Item quantities must be positive");
         }
-        this.orderId = orderCounter++;
-        this.userName = userName;
-        this.items = new HashMap<>(items);
-        this.status = OrderStatus.PENDING;
     }
 
-    public void assignToRestaurant(Restaurant restaurant) {
+    public boolean assignToRestaurant(Restaurant restaurant) {
+        long total = restaurant.priceOrderInMinorUnits(items);
+        return total != Restaurant.INELIGIBLE && assignToRestaurant(restaurant, total);
+    }
+
+    public boolean assignToRestaurant(RestaurantSelection selection) {
+        return assignToRestaurant(selection.getRestaurant(), selection.getTotalCostInMinorUnits());
+    }
+
+    private boolean assignToRestaurant(Restaurant restaurant, long totalCostInMinorUnits) {
+        if (!restaurant.tryAcceptOrder()) {
+            return false;
+        }
+        assignToReservedSlot(restaurant, totalCostInMinorUnits);
+        return true;
+    }
+
+    void assignToReservedSlot(Restaurant restaurant, long totalCostInMinorUnits) {
         this.assignedRestaurant = restaurant;
-        this.totalCost = restaurant.calculateTotalCost(items);
+        this.totalCostInMinorUnits = totalCostInMinorUnits;
         this.status = OrderStatus.ACCEPTED;
-        restaurant.acceptOrder();
     }
 
-    public void markCompleted() {
+    public synchronized void markCompleted() {
         if (status != OrderStatus.ACCEPTED) {
             throw new IllegalStateException("Only accepted orders can be completed");
         }
@@ -192,7 +629,17 @@ class Order {
         this.status = OrderStatus.REJECTED;
     }
 
-    public int getOrderId() {
+    void restoreAccepted(Restaurant restaurant, long totalCostInMinorUnits) {
+        this.assignedRestaurant = restaurant;
+        this.totalCostInMinorUnits = totalCostInMinorUnits;
+        this.status = OrderStatus.ACCEPTED;
+    }
+
+    void restoreCompleted() {
+        this.status = OrderStatus.COMPLETED;
+    }
+
+    public long getOrderId() {
         return orderId;
     }
 
@@ -213,34 +660,235 @@ class Order {
     }
 
     public BigDecimal getTotalCost() {
-        return totalCost;
+        return assignedRestaurant != null ? Money.fromMinorUnits(totalCostInMinorUnits) : null;
+    }
+
+    public long getTotalCostInMinorUnits() {
+        return totalCostInMinorUnits;
+    }
+}
+
+class RestaurantSelection {
+    private final Restaurant restaurant;
+    private final long totalCostInMinorUnits;
+    private final double score;
+
+    public RestaurantSelection(Restaurant restaurant, long totalCostInMinorUnits, double score) {
+        if (restaurant == null) {
+            throw new IllegalArgumentException("Selected restaurant cannot be null");
+        }
+        this.restaurant = restaurant;
+        this.totalCostInMinorUnits = totalCostInMinorUnits;
+        this.score = score;
+    }
+
+    public Restaurant getRestaurant() {
+        return restaurant;
+    }
+
+    public long getTotalCostInMinorUnits() {
+        return totalCostInMinorUnits;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
+
+class OrderRequest {
+    private final String userName;
+    private final Map<String, Integer> items;
+
+    public OrderRequest(String userName, Map<String, Integer> items) {
+        this.userName = userName;
+        this.items = items;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public Map<String, Integer> getItems() {
+        return items;
+    }
+}
+
+class OrderResult {
+    private final OrderRequest request;
+    private final Order order;
+    private final String failureReason;
+    private final boolean queued;
+
+    private OrderResult(OrderRequest request, Order order, String failureReason, boolean queued) {
+        this.request = request;
+        this.order = order;
+        this.failureReason = failureReason;
+        this.queued = queued;
+    }
+
+    static OrderResult accepted(OrderRequest request, Order order) {
+        return new OrderResult(request, order, null, false);
+    }
+
+    static OrderResult queued(OrderRequest request, Order order) {
+        return new OrderResult(request, order, null, true);
+    }
+
+    static OrderResult failed(OrderRequest request, Order order, String failureReason) {
+        return new OrderResult(request, order, failureReason, false);
+    }
+
+    public boolean isAccepted() {
+        return failureReason == null && !queued;
+    }
+
+    public boolean isQueued() {
+        return queued;
+    }
+
+    public OrderRequest getRequest() {
+        return request;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
     }
 }
 
 interface SelectionStrategy {
-    Optional<Restaurant> selectRestaurant(List<Restaurant> eligibleRestaurants, Map<String, Integer> orderItems);
+    Optional<RestaurantSelection> selectRestaurant(List<Restaurant> eligibleRestaurants,
+            Map<String, Integer> orderItems);
+
+    default List<RestaurantSelection> rankRestaurants(List<Restaurant> eligibleRestaurants,
+            Map<String, Integer> orderItems, int limit) {
+        List<Restaurant> remaining = new ArrayList<>(eligibleRestaurants);
+        List<RestaurantSelection> ranked = new ArrayList<>(Math.min(limit, remaining.size()));
+        while (ranked.size() < limit && !remaining.isEmpty()) {
+            Optional<RestaurantSelection> selection = selectRestaurant(remaining, orderItems);
+            if (!selection.isPresent()) {
+                break;
+            }
+            ranked.add(selection.get());
+            remaining.remove(selection.get().getRestaurant());
+        }
+        return ranked;
+    }
+
+    default Optional<RestaurantSelection> selectFromIndex(RestaurantIndex index, Map<String, Integer> orderItems) {
+        return Optional.empty();
+    }
 }
 
 class LowestCostStrategy implements SelectionStrategy {
     @Override
-    public Optional<Restaurant> selectRestaurant(List<Restaurant> eligibleRestaurants,
+    public Optional<RestaurantSelection> selectRestaurant(List<Restaurant> eligibleRestaurants,
             Map<String, Integer> orderItems) {
         Restaurant minCostRestaurant = null;
-        BigDecimal minCost = null;
+        long minCost = Long.MAX_VALUE;
         for (Restaurant r : eligibleRestaurants) {
-            BigDecimal cost = r.calculateTotalCost(orderItems);
-            if (minCost == null || cost.compareTo(minCost) < 0) {
+            long cost = r.priceOrderInMinorUnits(orderItems);
+            if (cost != Restaurant.INELIGIBLE && cost < minCost) {
                 minCost = cost;
                 minCostRestaurant = r;
             }
         }
-        return Optional.ofNullable(minCostRestaurant);
+        if (minCostRestaurant == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new RestaurantSelection(minCostRestaurant, minCost, minCost));
+    }
+
+    @Override
+    public List<RestaurantSelection> rankRestaurants(List<Restaurant> eligibleRestaurants,
+            Map<String, Integer> orderItems, int limit) {
+        List<RestaurantSelection> ranked = new ArrayList<>(eligibleRestaurants.size());
+        for (Restaurant r : eligibleRestaurants) {
+            long cost = r.priceOrderInMinorUnits(orderItems);
+            if (cost != Restaurant.INELIGIBLE) {
+                ranked.add(new RestaurantSelection(r, cost, cost));
+            }
+        }
+        ranked.sort(Comparator.comparingLong(RestaurantSelection::getTotalCostInMinorUnits)
+                .thenComparingInt(selection -> selection.getRestaurant().getOrdinal()));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    @Override
+    public Optional<RestaurantSelection> selectFromIndex(RestaurantIndex index, Map<String, Integer> orderItems) {
+        int itemCount = orderItems.size();
+        List<Iterator<RestaurantIndex.PricedRestaurant>> byPrice = new ArrayList<>(itemCount);
+        int[] quantities = new int[itemCount];
+        for (Map.Entry<String, Integer> entry : orderItems.entrySet()) {
+            Iterable<RestaurantIndex.PricedRestaurant> prices = index.restaurantsByPrice(entry.getKey());
+            if (prices == null) {
+                return Optional.empty();
+            }
+            quantities[byPrice.size()] = entry.getValue();
+            byPrice.add(prices.iterator());
+        }
+        long[] frontier = new long[itemCount];
+        int[] frontierOrdinals = new int[itemCount];
+        BitSet seen = new BitSet();
+        Restaurant best = null;
+        long bestCost = Long.MAX_VALUE;
+        boolean exhausted = false;
+        while (!exhausted) {
+            for (int i = 0; i < itemCount; i++) {
+                Iterator<RestaurantIndex.PricedRestaurant> it = byPrice.get(i);
+                if (!it.hasNext()) {
+                    exhausted = true;
+                    break;
+                }
+                RestaurantIndex.PricedRestaurant next = it.next();
+                Restaurant r = next.getRestaurant();
+                frontier[i] = next.getPriceInMinorUnits();
+                frontierOrdinals[i] = r.getOrdinal();
+                if (seen.get(r.getOrdinal())) {
+                    continue;
+                }
+                seen.set(r.getOrdinal());
+                if (!r.canAcceptOrder()) {
+                    continue;
+                }
+                long cost = r.priceOrderInMinorUnits(orderItems, bestCost);
+                if (cost != Restaurant.INELIGIBLE
+                        && (cost < bestCost || (cost == bestCost && r.getOrdinal() < best.getOrdinal()))) {
+                    bestCost = cost;
+                    best = r;
+                }
+            }
+            if (best != null && !exhausted) {
+                long bound = lowerBound(frontier, quantities);
+                if (bestCost < bound
+                        || (bestCost == bound && best.getOrdinal() <= Arrays.stream(frontierOrdinals).max().getAsInt())) {
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new RestaurantSelection(best, bestCost, bestCost));
+    }
+
+    private static long lowerBound(long[] frontier, int[] quantities) {
+        long bound = 0;
+        for (int i = 0; i < frontier.length; i++) {
+            bound = Money.add(bound, Money.lineTotal(frontier[i], quantities[i]));
+        }
+        return bound;
     }
 }
 
 class HighestRatingStrategy implements SelectionStrategy {
+    private static final int INDEX_WALK_LIMIT = 256;
+
     @Override
-    public Optional<Restaurant> selectRestaurant(List<Restaurant> eligibleRestaurants,
+    public Optional<RestaurantSelection> selectRestaurant(List<Restaurant> eligibleRestaurants,
             Map<String, Integer> orderItems) {
         Restaurant best = null;
         double maxRating = -1;
@@ -250,31 +898,3582 @@ class HighestRatingStrategy implements SelectionStrategy {
                 best = r;
             }
         }
-        return Optional.ofNullable(best);
+        if (best == null) {
+            return Optional.empty();
+        }
+        long cost = best.priceOrderInMinorUnits(orderItems);
+        if (cost == Restaurant.INELIGIBLE) {
+            return Optional.empty();
+        }
+        return Optional.of(new RestaurantSelection(best, cost, maxRating));
     }
-}
 
-class OrderProcessingException extends Exception {
-    public OrderProcessingException(String message) {
-        super(message);
+    @Override
+    public List<RestaurantSelection> rankRestaurants(List<Restaurant> eligibleRestaurants,
+            Map<String, Integer> orderItems, int limit) {
+        List<RestaurantSelection> ranked = new ArrayList<>(eligibleRestaurants.size());
+        for (Restaurant r : eligibleRestaurants) {
+            long cost = r.priceOrderInMinorUnits(orderItems);
+            if (cost != Restaurant.INELIGIBLE) {
+                ranked.add(new RestaurantSelection(r, cost, r.getRating()));
+            }
+        }
+        ranked.sort(Comparator.comparingDouble(RestaurantSelection::getScore).reversed()
+                .thenComparingInt(selection -> selection.getRestaurant().getOrdinal()));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    @Override
+    public Optional<RestaurantSelection> selectFromIndex(RestaurantIndex index, Map<String, Integer> orderItems) {
+        RestaurantBitmap servers = index.rarestPosting(orderItems);
+        if (servers == null) {
+            return Optional.empty();
+        }
+        int unvisitedServers = servers.cardinality();
+        int walked = 0;
+        for (Restaurant r : index.restaurantsByRating()) {
+            if (unvisitedServers == 0 || ++walked > INDEX_WALK_LIMIT) {
+                break;
+            }
+            if (!servers.get(r.getOrdinal())) {
+                continue;
+            }
+            unvisitedServers--;
+            if (!r.canAcceptOrder()) {
+                continue;
+            }
+            long cost = r.priceOrderInMinorUnits(orderItems);
+            if (cost != Restaurant.INELIGIBLE) {
+                return Optional.of(new RestaurantSelection(r, cost, r.getRating()));
+            }
+        }
+        return Optional.empty();
+    }
+}
+
+class LongKeyHeap {
+    private long[] keys = new long[16];
+    private int[] values = new int[16];
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void push(long key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int slot = size++;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(key, value, keys[parent], values[parent])) {
+                break;
+            }
+            keys[slot] = keys[parent];
+            values[slot] = values[parent];
+            slot = parent;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    public long peekKey() {
+        return keys[0];
+    }
+
+    public int pop() {
+        int top = values[0];
+        size--;
+        if (size > 0) {
+            siftDown(0, keys[size], values[size]);
+        }
+        return top;
+    }
+
+    private void siftDown(int slot, long key, int value) {
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && less(keys[child + 1], values[child + 1], keys[child], values[child])) {
+                child++;
+            }
+            if (!less(keys[child], values[child], key, value)) {
+                break;
+            }
+            keys[slot] = keys[child];
+            values[slot] = values[child];
+            slot = child;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private static boolean less(long key, int value, long otherKey, int otherValue) {
+        return key < otherKey || (key == otherKey && value < otherValue);
+    }
+}
+
+class MinCostFlow {
+    interface ArcGenerator {
+        long nextCost(int node);
+
+        int addNextArc(int node);
+    }
+
+    private int nodeCount;
+    private int edgeCount;
+    private int[] head;
+    private int[] next;
+    private int[] to;
+    private int[] capacity;
+    private long[] cost;
+    private long[] potential;
+    private long[] distance;
+    private int[] viaEdge;
+    private int[] arcCursor;
+    private int[] visitStamp;
+    private int[] deadStamp;
+    private int stamp;
+    private int sink = -1;
+    private final LongKeyHeap queue = new LongKeyHeap();
+
+    public MinCostFlow() {
+        head = new int[16];
+        potential = new long[16];
+        distance = new long[16];
+        viaEdge = new int[16];
+        arcCursor = new int[16];
+        visitStamp = new int[16];
+        deadStamp = new int[16];
+        next = new int[32];
+        to = new int[32];
+        capacity = new int[32];
+        cost = new long[32];
+    }
+
+    public int addNode() {
+        if (nodeCount == head.length) {
+            head = Arrays.copyOf(head, nodeCount * 2);
+            potential = Arrays.copyOf(potential, nodeCount * 2);
+            distance = Arrays.copyOf(distance, nodeCount * 2);
+            viaEdge = Arrays.copyOf(viaEdge, nodeCount * 2);
+            arcCursor = Arrays.copyOf(arcCursor, nodeCount * 2);
+            visitStamp = Arrays.copyOf(visitStamp, nodeCount * 2);
+            deadStamp = Arrays.copyOf(deadStamp, nodeCount * 2);
+        }
+        head[nodeCount] = -1;
+        potential[nodeCount] = sink >= 0 ? potential[sink] : 0;
+        distance[nodeCount] = Long.MAX_VALUE;
+        viaEdge[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    public int addEdge(int from, int target, int edgeCapacity, long edgeCost) {
+        if (edgeCapacity < 0 || edgeCost < 0) {
+            throw new IllegalArgumentException("Edge capacity and cost must be non-negative");
+        }
+        int forward = edgeCount;
+        link(from, target, edgeCapacity, edgeCost);
+        link(target, from, 0, -edgeCost);
+        return forward;
+    }
+
+    public int flow(int edge) {
+        return capacity[edge ^ 1];
+    }
+
+    public long[] solve(int source, int sink) {
+        return solve(source, sink, null);
+    }
+
+    // Arcs from the generator are revealed cheapest first, only once a path through them could still beat the
+    // best known path to the sink. That bound needs every generated arc to end at a node whose sole outgoing
+    // arc goes to the sink, because flow on such an arc never shrinks and keeps the node's potential at or
+    // below the sink's.
+    public long[] solve(int source, int sink, ArcGenerator arcs) {
+        this.sink = sink;
+        long supply = 0;
+        for (int e = head[source]; e != -1; e = next[e]) {
+            supply += capacity[e];
+        }
+        long totalFlow = 0;
+        long totalCost = 0;
+        while (totalFlow < supply) {
+            Arrays.fill(distance, 0, nodeCount, Long.MAX_VALUE);
+            Arrays.fill(viaEdge, 0, nodeCount, -1);
+            distance[source] = 0;
+            queue.clear();
+            queue.push(0, source);
+            while (!queue.isEmpty()) {
+                long queued = queue.peekKey();
+                int entry = queue.pop();
+                if (entry < 0) {
+                    int node = ~entry;
+                    relax(node, arcs.addNextArc(node));
+                    scheduleNextArc(arcs, node);
+                    continue;
+                }
+                if (queued > distance[entry]) {
+                    continue;
+                }
+                if (entry == sink) {
+                    break;
+                }
+                for (int e = head[entry]; e != -1; e = next[e]) {
+                    relax(entry, e);
+                }
+                if (arcs != null) {
+                    scheduleNextArc(arcs, entry);
+                }
+            }
+            long reach = distance[sink];
+            if (reach == Long.MAX_VALUE) {
+                break;
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                potential[v] += Math.min(distance[v], reach);
+            }
+            int phase = ++stamp;
+            do {
+                int bottleneck = Integer.MAX_VALUE;
+                for (int v = sink; v != source; v = to[viaEdge[v] ^ 1]) {
+                    bottleneck = Math.min(bottleneck, capacity[viaEdge[v]]);
+                }
+                for (int v = sink; v != source; v = to[viaEdge[v] ^ 1]) {
+                    capacity[viaEdge[v]] -= bottleneck;
+                    capacity[viaEdge[v] ^ 1] += bottleneck;
+                    totalCost = Money.add(totalCost, Money.lineTotal(cost[viaEdge[v]], bottleneck));
+                }
+                totalFlow += bottleneck;
+            } while (totalFlow < supply && findZeroCostPath(source, phase));
+        }
+        return new long[] {totalFlow, totalCost};
+    }
+
+    // Once potentials are updated every shortest path has zero reduced cost, so paths found by a depth-first
+    // walk over such arcs are augmented without another Dijkstra pass.
+    private boolean findZeroCostPath(int source, int phase) {
+        if (deadStamp[source] == phase) {
+            return false;
+        }
+        int walk = ++stamp;
+        int node = source;
+        visitStamp[source] = walk;
+        if (deadStamp[source] != -phase) {
+            deadStamp[source] = -phase;
+            arcCursor[source] = head[source];
+        }
+        while (node != sink) {
+            int e = arcCursor[node];
+            while (e != -1 && !admissible(node, e, walk, phase)) {
+                e = next[e];
+            }
+            arcCursor[node] = e;
+            if (e != -1) {
+                int target = to[e];
+                if (deadStamp[target] != -phase) {
+                    deadStamp[target] = -phase;
+                    arcCursor[target] = head[target];
+                }
+                visitStamp[target] = walk;
+                viaEdge[target] = e;
+                node = target;
+                continue;
+            }
+            deadStamp[node] = phase;
+            if (node == source) {
+                return false;
+            }
+            node = to[viaEdge[node] ^ 1];
+            arcCursor[node] = next[arcCursor[node]];
+        }
+        return true;
+    }
+
+    private boolean admissible(int node, int e, int walk, int phase) {
+        int target = to[e];
+        return capacity[e] > 0 && deadStamp[target] != phase && visitStamp[target] != walk
+                && cost[e] + potential[node] - potential[target] == 0;
+    }
+
+    private void relax(int node, int e) {
+        if (capacity[e] == 0) {
+            return;
+        }
+        long reduced = distance[node] + cost[e] + potential[node] - potential[to[e]];
+        if (reduced < distance[to[e]]) {
+            distance[to[e]] = reduced;
+            viaEdge[to[e]] = e;
+            queue.push(reduced, to[e]);
+        }
+    }
+
+    private void scheduleNextArc(ArcGenerator arcs, int node) {
+        long arcCost = arcs.nextCost(node);
+        if (arcCost != Long.MAX_VALUE) {
+            queue.push(distance[node] + arcCost + potential[node] - potential[sink], ~node);
+        }
+    }
+
+    private void link(int from, int target, int edgeCapacity, long edgeCost) {
+        if (edgeCount == to.length) {
+            next = Arrays.copyOf(next, edgeCount * 2);
+            to = Arrays.copyOf(to, edgeCount * 2);
+            capacity = Arrays.copyOf(capacity, edgeCount * 2);
+            cost = Arrays.copyOf(cost, edgeCount * 2);
+        }
+        to[edgeCount] = target;
+        capacity[edgeCount] = edgeCapacity;
+        cost[edgeCount] = edgeCost;
+        next[edgeCount] = head[from];
+        head[from] = edgeCount++;
+    }
+}
+
+class AdmissionQueue {
+    static final class Entry {
+        private final Order order;
+        private final long startNanos;
+        private final long sequence;
+        private final int[] restaurantOrdinals;
+        private final AtomicBoolean claimed;
+        private final CompletableFuture<Order> outcome;
+        private volatile ScheduledFuture<?> expiry;
+
+        Entry(Order order, long startNanos, long sequence, int[] restaurantOrdinals) {
+            this.order = order;
+            this.startNanos = startNanos;
+            this.sequence = sequence;
+            this.restaurantOrdinals = restaurantOrdinals;
+            this.claimed = new AtomicBoolean();
+            this.outcome = new CompletableFuture<>();
+        }
+
+        public Order getOrder() {
+            return order;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        public CompletableFuture<Order> getOutcome() {
+            return outcome.copy();
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        void setExpiry(ScheduledFuture<?> expiry) {
+            this.expiry = expiry;
+        }
+
+        void cancelExpiry() {
+            ScheduledFuture<?> scheduled = expiry;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    private final int capacity;
+    private final Duration timeout;
+    private final AtomicInteger size;
+    private final AtomicLong sequence;
+    private final Map<Integer, NavigableSet<Entry>> byRestaurant;
+    private final Map<Long, Entry> byOrderId;
+
+    public AdmissionQueue(int capacity, Duration timeout) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Admission queue capacity must be positive");
+        }
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Admission timeout must be positive");
+        }
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.size = new AtomicInteger();
+        this.sequence = new AtomicLong();
+        this.byRestaurant = new ConcurrentHashMap<>();
+        this.byOrderId = new ConcurrentHashMap<>();
+    }
+
+    public Entry offer(Order order, long startNanos, List<Restaurant> servingRestaurants) {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return null;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        int[] ordinals = new int[servingRestaurants.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = servingRestaurants.get(i).getOrdinal();
+        }
+        Entry entry = new Entry(order, startNanos, sequence.getAndIncrement(), ordinals);
+        byOrderId.put(order.getOrderId(), entry);
+        return entry;
+    }
+
+    public void publish(Entry entry) {
+        for (int ordinal : entry.restaurantOrdinals) {
+            byRestaurant.computeIfAbsent(ordinal,
+                    k -> new ConcurrentSkipListSet<>(Comparator.comparingLong(Entry::getSequence))).add(entry);
+        }
+    }
+
+    public Entry find(long orderId) {
+        return byOrderId.get(orderId);
+    }
+
+    public void admitted(Entry entry) {
+        entry.outcome.complete(entry.getOrder());
+        byOrderId.remove(entry.getOrder().getOrderId());
+    }
+
+    public void refused(Entry entry, OrderProcessingException reason) {
+        entry.outcome.completeExceptionally(reason);
+        byOrderId.remove(entry.getOrder().getOrderId());
+    }
+
+    public Entry dispatchTo(Restaurant restaurant) {
+        NavigableSet<Entry> waiting = byRestaurant.get(restaurant.getOrdinal());
+        if (waiting == null || waiting.isEmpty() || !restaurant.tryAcceptOrder()) {
+            return null;
+        }
+        Entry entry;
+        while ((entry = waiting.pollFirst()) != null) {
+            if (entry.claim()) {
+                unlink(entry);
+                Order order = entry.getOrder();
+                order.assignToReservedSlot(restaurant, restaurant.priceOrderInMinorUnits(order.getItems()));
+                return entry;
+            }
+        }
+        restaurant.completeOrder();
+        return null;
+    }
+
+    public boolean remove(Entry entry) {
+        if (!entry.claim()) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    private void unlink(Entry entry) {
+        size.decrementAndGet();
+        for (int ordinal : entry.restaurantOrdinals) {
+            NavigableSet<Entry> waiting = byRestaurant.get(ordinal);
+            if (waiting != null) {
+                waiting.remove(entry);
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
+
+class OrderProcessingException extends Exception {
+    public OrderProcessingException(String message) {
+        super(message);
+    }
+}
+
+class AdmissionQueueFullException extends OrderProcessingException {
+    public AdmissionQueueFullException(String message) {
+        super(message);
+    }
+}
+
+class RestaurantNotFoundException extends Exception {
+    public RestaurantNotFoundException(String message) {
+        super(message);
+    }
+}
+
+class RestaurantIndex {
+    private volatile AtomicReferenceArray<Restaurant> restaurantsByOrdinal;
+    private int restaurantCount;
+    private Map<String, RestaurantBitmap> itemBitmaps;
+    private RestaurantBitmap available;
+    private NavigableSet<Restaurant> restaurantsByRating;
+    private Map<String, ItemPrices> itemPrices;
+
+    static final class PricedRestaurant {
+        private final long priceInMinorUnits;
+        private final Restaurant restaurant;
+
+        PricedRestaurant(long priceInMinorUnits, Restaurant restaurant) {
+            this.priceInMinorUnits = priceInMinorUnits;
+            this.restaurant = restaurant;
+        }
+
+        public long getPriceInMinorUnits() {
+            return priceInMinorUnits;
+        }
+
+        public Restaurant getRestaurant() {
+            return restaurant;
+        }
+    }
+
+    private static final class ItemPrices {
+        private final NavigableSet<PricedRestaurant> byPrice = new ConcurrentSkipListSet<>(
+                Comparator.comparingLong(PricedRestaurant::getPriceInMinorUnits)
+                        .thenComparingInt(p -> p.getRestaurant().getOrdinal()));
+        private final Map<Integer, PricedRestaurant> byOrdinal = new ConcurrentHashMap<>();
+    }
+
+    public RestaurantIndex() {
+        restaurantsByOrdinal = new AtomicReferenceArray<>(16);
+        restaurantCount = 0;
+        itemBitmaps = new ConcurrentHashMap<>();
+        available = new RestaurantBitmap();
+        restaurantsByRating = new ConcurrentSkipListSet<>(
+                Comparator.comparingDouble(Restaurant::getRating).reversed().thenComparingInt(Restaurant::getOrdinal));
+        itemPrices = new ConcurrentHashMap<>();
+    }
+
+    public synchronized Restaurant register(String name, int maxOrders, double rating) {
+        AtomicReferenceArray<Restaurant> current = restaurantsByOrdinal;
+        if (restaurantCount == current.length()) {
+            AtomicReferenceArray<Restaurant> grown = new AtomicReferenceArray<>(current.length() * 2);
+            for (int i = 0; i < restaurantCount; i++) {
+                grown.set(i, current.get(i));
+            }
+            current = grown;
+        }
+        Restaurant restaurant = new Restaurant(name, maxOrders, rating, restaurantCount, available);
+        current.set(restaurantCount++, restaurant);
+        restaurantsByOrdinal = current;
+        restaurantsByRating.add(restaurant);
+        return restaurant;
+    }
+
+    public Iterable<Restaurant> restaurantsByRating() {
+        return Collections.unmodifiableNavigableSet(restaurantsByRating);
+    }
+
+    public Restaurant get(int ordinal) {
+        return restaurantsByOrdinal.get(ordinal);
+    }
+
+    public synchronized int size() {
+        return restaurantCount;
+    }
+
+    public void indexMenuItem(Restaurant restaurant, String itemName) {
+        itemBitmaps.computeIfAbsent(itemName, k -> new RestaurantBitmap()).set(restaurant.getOrdinal());
+        long price = restaurant.getItemPriceInMinorUnits(itemName);
+        if (price == Restaurant.INELIGIBLE) {
+            return;
+        }
+        ItemPrices prices = itemPrices.computeIfAbsent(itemName, k -> new ItemPrices());
+        PricedRestaurant entry = new PricedRestaurant(price, restaurant);
+        prices.byPrice.add(entry);
+        PricedRestaurant previous = prices.byOrdinal.put(restaurant.getOrdinal(), entry);
+        if (previous != null && previous.getPriceInMinorUnits() != price) {
+            prices.byPrice.remove(previous);
+        }
+    }
+
+    public Iterable<PricedRestaurant> restaurantsByPrice(String itemName) {
+        ItemPrices prices = itemPrices.get(itemName);
+        return prices != null ? Collections.unmodifiableNavigableSet(prices.byPrice) : null;
+    }
+
+    public Iterator<PricedRestaurant> restaurantsByOrderCost(Map<String, Integer> items) {
+        List<Iterator<PricedRestaurant>> byPrice = new ArrayList<>(items.size());
+        int[] quantities = new int[items.size()];
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            ItemPrices prices = itemPrices.get(entry.getKey());
+            if (prices == null) {
+                return Collections.emptyIterator();
+            }
+            quantities[byPrice.size()] = entry.getValue();
+            byPrice.add(prices.byPrice.iterator());
+        }
+        return new OrderCostIterator(items, byPrice, quantities);
+    }
+
+    public List<Restaurant> findEligible(Map<String, Integer> items) {
+        return find(items, true);
+    }
+
+    public RestaurantBitmap rarestPosting(Map<String, Integer> items) {
+        RestaurantBitmap rarest = null;
+        for (String item : items.keySet()) {
+            RestaurantBitmap posting = itemBitmaps.get(item);
+            if (posting == null || posting.cardinality() == 0) {
+                return null;
+            }
+            if (rarest == null || posting.cardinality() < rarest.cardinality()) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    public List<Restaurant> findServing(Map<String, Integer> items) {
+        return find(items, false);
+    }
+
+    private List<Restaurant> find(Map<String, Integer> items, boolean availableOnly) {
+        RestaurantBitmap eligible = intersect(items, availableOnly);
+        if (eligible == null) {
+            return new ArrayList<>();
+        }
+        List<Restaurant> eligibleRestaurants = new ArrayList<>(eligible.cardinality());
+        AtomicReferenceArray<Restaurant> byOrdinal = restaurantsByOrdinal;
+        eligible.forEach(ordinal -> eligibleRestaurants.add(byOrdinal.get(ordinal)));
+        return eligibleRestaurants;
+    }
+
+    private final class OrderCostIterator implements Iterator<PricedRestaurant> {
+        private final Map<String, Integer> items;
+        private final List<Iterator<PricedRestaurant>> byPrice;
+        private final int[] quantities;
+        private final long[] frontier;
+        private final LongKeyHeap candidates = new LongKeyHeap();
+        private final BitSet seen = new BitSet();
+        private boolean exhausted;
+
+        OrderCostIterator(Map<String, Integer> items, List<Iterator<PricedRestaurant>> byPrice, int[] quantities) {
+            this.items = items;
+            this.byPrice = byPrice;
+            this.quantities = quantities;
+            this.frontier = new long[quantities.length];
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                if (!candidates.isEmpty() && (exhausted || candidates.peekKey() <= lowerBound())) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                advance();
+            }
+        }
+
+        @Override
+        public PricedRestaurant next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long orderCost = candidates.peekKey();
+            return new PricedRestaurant(orderCost, restaurantsByOrdinal.get(candidates.pop()));
+        }
+
+        private void advance() {
+            for (int i = 0; i < byPrice.size(); i++) {
+                Iterator<PricedRestaurant> it = byPrice.get(i);
+                if (!it.hasNext()) {
+                    exhausted = true;
+                    return;
+                }
+                PricedRestaurant priced = it.next();
+                frontier[i] = priced.getPriceInMinorUnits();
+                int ordinal = priced.getRestaurant().getOrdinal();
+                if (!seen.get(ordinal)) {
+                    seen.set(ordinal);
+                    long orderCost = priced.getRestaurant().priceOrderInMinorUnits(items);
+                    if (orderCost != Restaurant.INELIGIBLE) {
+                        candidates.push(orderCost, ordinal);
+                    }
+                }
+            }
+        }
+
+        private long lowerBound() {
+            long bound = 0;
+            for (int i = 0; i < frontier.length; i++) {
+                bound = Money.add(bound, Money.lineTotal(frontier[i], quantities[i]));
+            }
+            return bound;
+        }
+    }
+
+    private RestaurantBitmap intersect(Map<String, Integer> items, boolean availableOnly) {
+        List<RestaurantBitmap> postings = new ArrayList<>(items.size() + 1);
+        for (String item : items.keySet()) {
+            RestaurantBitmap posting = itemBitmaps.get(item);
+            if (posting == null || posting.cardinality() == 0) {
+                return null;
+            }
+            postings.add(posting);
+        }
+        if (availableOnly) {
+            postings.add(available);
+        }
+        postings.sort(Comparator.comparingInt(RestaurantBitmap::cardinality));
+        RestaurantBitmap eligible = postings.get(0).copy();
+        for (int i = 1; i < postings.size() && eligible.cardinality() > 0; i++) {
+            eligible.and(postings.get(i));
+        }
+        return eligible;
+    }
+}
+
+class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+    private final LongAdder totalCount;
+    private final LongAdder sum;
+    private final AtomicLong maxValue;
+
+    public Histogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+        totalCount = new LongAdder();
+        sum = new LongAdder();
+        maxValue = new AtomicLong();
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        sum.add(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    public long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+}
+
+class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+}
+
+class MetricsRegistry {
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+}
+
+class OrderMetrics {
+    static final String PLACE_ORDER_LATENCY = "order.place.latency.nanos";
+    static final String SELECTION_LATENCY = "order.selection.latency.nanos";
+    static final String COMPLETION_LATENCY = "order.complete.latency.nanos";
+    static final String ELIGIBLE_RESTAURANTS = "order.eligible.restaurants";
+    static final String ACCEPTED = "order.accepted";
+    static final String REJECTED = "order.rejected";
+    static final String COMPLETED = "order.completed";
+
+    static final OrderMetrics DISABLED = new OrderMetrics();
+
+    private final boolean enabled;
+    private final Histogram placeOrderLatency;
+    private final Histogram selectionLatency;
+    private final Histogram completionLatency;
+    private final Histogram eligibleRestaurants;
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter completed;
+
+    private OrderMetrics() {
+        enabled = false;
+        placeOrderLatency = null;
+        selectionLatency = null;
+        completionLatency = null;
+        eligibleRestaurants = null;
+        accepted = null;
+        rejected = null;
+        completed = null;
+    }
+
+    public OrderMetrics(MetricsRegistry registry) {
+        enabled = true;
+        placeOrderLatency = registry.histogram(PLACE_ORDER_LATENCY);
+        selectionLatency = registry.histogram(SELECTION_LATENCY);
+        completionLatency = registry.histogram(COMPLETION_LATENCY);
+        eligibleRestaurants = registry.histogram(ELIGIBLE_RESTAURANTS);
+        accepted = registry.counter(ACCEPTED);
+        rejected = registry.counter(REJECTED);
+        completed = registry.counter(COMPLETED);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void eligibleRestaurantsFound(int count) {
+        if (enabled) {
+            eligibleRestaurants.record(count);
+        }
+    }
+
+    public void selectionFinished(long startNanos) {
+        if (enabled) {
+            selectionLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void orderAccepted(long startNanos) {
+        if (enabled) {
+            placeOrderLatency.record(System.nanoTime() - startNanos);
+            accepted.increment();
+        }
+    }
+
+    public void orderRejected(long startNanos) {
+        if (enabled) {
+            placeOrderLatency.record(System.nanoTime() - startNanos);
+            rejected.increment();
+        }
+    }
+
+    public void orderCompleted(long startNanos) {
+        if (enabled) {
+            completionLatency.record(System.nanoTime() - startNanos);
+            completed.increment();
+        }
+    }
+}
+
+interface OrderEventLogger {
+    OrderEventLogger DISABLED = new OrderEventLogger() {
+        @Override
+        public void restaurantOnboarded(String restaurantName) {
+        }
+
+        @Override
+        public void menuItemAdded(String restaurantName, String itemName, BigDecimal price) {
+        }
+
+        @Override
+        public void menuItemPriceUpdated(String restaurantName, String itemName, BigDecimal price) {
+        }
+
+        @Override
+        public void orderAssigned(long orderId, String restaurantName, long totalInMinorUnits) {
+        }
+
+        @Override
+        public void orderRejected(long orderId) {
+        }
+
+        @Override
+        public void orderCompleted(long orderId) {
+        }
+    };
+
+    void restaurantOnboarded(String restaurantName);
+
+    void menuItemAdded(String restaurantName, String itemName, BigDecimal price);
+
+    void menuItemPriceUpdated(String restaurantName, String itemName, BigDecimal price);
+
+    void orderAssigned(long orderId, String restaurantName, long totalInMinorUnits);
+
+    void orderRejected(long orderId);
+
+    void orderCompleted(long orderId);
+}
+
+class ConsoleEventLogger implements OrderEventLogger {
+    @Override
+    public void restaurantOnboarded(String restaurantName) {
+        System.out.println("Restaurant onboarded successfully: " + restaurantName);
+    }
+
+    @Override
+    public void menuItemAdded(String restaurantName, String itemName, BigDecimal price) {
+        System.out.println("Menu item added to " + restaurantName + ": " + itemName + " - " + price);
+    }
+
+    @Override
+    public void menuItemPriceUpdated(String restaurantName, String itemName, BigDecimal price) {
+        System.out.println("Menu item updated in " + restaurantName + ": " + itemName + " - " + price);
+    }
+
+    @Override
+    public void orderAssigned(long orderId, String restaurantName, long totalInMinorUnits) {
+        System.out.println("Order " + orderId + " assigned to " + restaurantName + " (Total: "
+                + Money.fromMinorUnits(totalInMinorUnits) + ")");
+    }
+
+    @Override
+    public void orderRejected(long orderId) {
+    }
+
+    @Override
+    public void orderCompleted(long orderId) {
+        System.out.println("Order " + orderId + " marked as completed");
+    }
+}
+
+class AsyncEventLogger implements OrderEventLogger, AutoCloseable {
+    enum Format {
+        LINE, BINARY
+    }
+
+    enum EventType {
+        RESTAURANT_ONBOARDED, MENU_ITEM_ADDED, MENU_ITEM_PRICE_UPDATED, ORDER_ASSIGNED, ORDER_REJECTED,
+        ORDER_COMPLETED
+    }
+
+    private static final class Slot {
+        EventType type;
+        long timestampMillis;
+        long orderId;
+        long amountInMinorUnits;
+        String restaurantName;
+        String itemName;
+        BigDecimal price;
+    }
+
+    private static final long IDLE_PARK_NANOS = 100_000;
+    private static final long CLOSED = 1L << 62;
+
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final LongAdder droppedEvents;
+    private final DataOutputStream out;
+    private final Format format;
+    private final Thread writer;
+    private volatile boolean running;
+    private long head;
+
+    public AsyncEventLogger(OutputStream out, int capacity, Format format) {
+        if (out == null || format == null) {
+            throw new IllegalArgumentException("Output stream and format cannot be null");
+        }
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two");
+        }
+        this.slots = new Slot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+        this.droppedEvents = new LongAdder();
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.format = format;
+        this.running = true;
+        this.writer = new Thread(this::drainLoop, "order-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void restaurantOnboarded(String restaurantName) {
+        publish(EventType.RESTAURANT_ONBOARDED, 0, 0, restaurantName, null, null);
+    }
+
+    @Override
+    public void menuItemAdded(String restaurantName, String itemName, BigDecimal price) {
+        publish(EventType.MENU_ITEM_ADDED, 0, 0, restaurantName, itemName, price);
+    }
+
+    @Override
+    public void menuItemPriceUpdated(String restaurantName, String itemName, BigDecimal price) {
+        publish(EventType.MENU_ITEM_PRICE_UPDATED, 0, 0, restaurantName, itemName, price);
+    }
+
+    @Override
+    public void orderAssigned(long orderId, String restaurantName, long totalInMinorUnits) {
+        publish(EventType.ORDER_ASSIGNED, orderId, totalInMinorUnits, restaurantName, null, null);
+    }
+
+    @Override
+    public void orderRejected(long orderId) {
+        publish(EventType.ORDER_REJECTED, orderId, 0, null, null, null);
+    }
+
+    @Override
+    public void orderCompleted(long orderId) {
+        publish(EventType.ORDER_COMPLETED, orderId, 0, null, null, null);
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    private void publish(EventType type, long orderId, long amountInMinorUnits, String restaurantName,
+            String itemName, BigDecimal price) {
+        if (!running) {
+            droppedEvents.increment();
+            return;
+        }
+        long position = tail.get();
+        while (true) {
+            if ((position & CLOSED) != 0) {
+                droppedEvents.increment();
+                return;
+            }
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Slot slot = slots[index];
+                    slot.type = type;
+                    slot.timestampMillis = System.currentTimeMillis();
+                    slot.orderId = orderId;
+                    slot.amountInMinorUnits = amountInMinorUnits;
+                    slot.restaurantName = restaurantName;
+                    slot.itemName = itemName;
+                    slot.price = price;
+                    sequences.set(index, position + 1);
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                droppedEvents.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private boolean drainAvailable() throws IOException {
+        boolean drained = false;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return drained;
+            }
+            Slot slot = slots[index];
+            write(slot);
+            slot.restaurantName = null;
+            slot.itemName = null;
+            slot.price = null;
+            sequences.set(index, head + slots.length);
+            head++;
+            drained = true;
+        }
+    }
+
+    private void drainLoop() {
+        try {
+            while (running) {
+                if (drainAvailable()) {
+                    out.flush();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            System.err.println("Order event writer stopped: " + e.getMessage());
+        }
+    }
+
+    private void write(Slot slot) throws IOException {
+        if (format == Format.BINARY) {
+            out.writeByte(slot.type.ordinal());
+            out.writeLong(slot.timestampMillis);
+            switch (slot.type) {
+                case RESTAURANT_ONBOARDED:
+                    out.writeUTF(slot.restaurantName);
+                    break;
+                case MENU_ITEM_ADDED:
+                case MENU_ITEM_PRICE_UPDATED:
+                    out.writeUTF(slot.restaurantName);
+                    out.writeUTF(slot.itemName);
+                    out.writeLong(Money.toMinorUnits(slot.price));
+                    break;
+                case ORDER_ASSIGNED:
+                    out.writeLong(slot.orderId);
+                    out.writeUTF(slot.restaurantName);
+                    out.writeLong(slot.amountInMinorUnits);
+                    break;
+                default:
+                    out.writeLong(slot.orderId);
+                    break;
+            }
+            return;
+        }
+        StringBuilder line = new StringBuilder(96);
+        line.append("ts=").append(slot.timestampMillis).append(" event=").append(slot.type);
+        switch (slot.type) {
+            case RESTAURANT_ONBOARDED:
+                line.append(" restaurant=\"").append(slot.restaurantName).append('"');
+                break;
+            case MENU_ITEM_ADDED:
+            case MENU_ITEM_PRICE_UPDATED:
+                line.append(" restaurant=\"").append(slot.restaurantName).append("\" item=\"").append(slot.itemName)
+                        .append("\" price=").append(slot.price.toPlainString());
+                break;
+            case ORDER_ASSIGNED:
+                line.append(" order=").append(slot.orderId).append(" restaurant=\"").append(slot.restaurantName)
+                        .append("\" total=").append(Money.fromMinorUnits(slot.amountInMinorUnits));
+                break;
+            default:
+                line.append(" order=").append(slot.orderId);
+                break;
+        }
+        line.append('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        long claimed = tail.getAndUpdate(position -> position | CLOSED);
+        if ((claimed & CLOSED) != 0) {
+            return;
+        }
+        boolean failed = !running;
+        running = false;
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failed) {
+            droppedEvents.add(claimed - head);
+            return;
+        }
+        try {
+            while (head < claimed) {
+                if (!drainAvailable()) {
+                    Thread.onSpinWait();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+interface JournalRecordHandler {
+    void restaurantOnboarded(String name, int maxOrders, double rating);
+
+    void menuItemAdded(String restaurantName, String itemName, long priceInMinorUnits);
+
+    void menuItemPriceUpdated(String restaurantName, String itemName, long priceInMinorUnits);
+
+    void orderAccepted(long orderId, String userName, Map<String, Integer> items, String restaurantName,
+            long totalInMinorUnits);
+
+    void orderRejected(long orderId, String userName, Map<String, Integer> items);
+
+    void orderCompleted(long orderId);
+}
+
+interface JournalOrderRecord {
+    long orderId();
+
+    String userName();
+
+    boolean isAccepted();
+
+    int restaurantOrdinal();
+
+    String restaurantName();
+
+    long totalInMinorUnits();
+
+    int lineCount();
+
+    String itemName(int line);
+
+    int quantity(int line);
+}
+
+// Journals that keep orders in fixed-width form hand them to these handlers through a reused cursor instead
+// of building an item map per record; the cursor is only valid until the callback returns.
+interface OrderRecordHandler extends JournalRecordHandler {
+    void orderPlaced(JournalOrderRecord record);
+}
+
+interface OrderJournal extends JournalRecordHandler, AutoCloseable {
+    long position();
+
+    default long startPosition() {
+        return 0;
+    }
+
+    default void checkpoint(long position) throws IOException {
+    }
+
+    default void replay(JournalRecordHandler handler) throws IOException {
+        replay(handler, startPosition());
+    }
+
+    void replay(JournalRecordHandler handler, long fromPosition) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
+
+enum FsyncPolicy {
+    NEVER, EVERY_RECORD, GROUP_COMMIT
+}
+
+class WriteAheadLog implements OrderJournal {
+    private static final byte RESTAURANT_ONBOARDED = 1;
+    private static final byte MENU_ITEM_ADDED = 2;
+    private static final byte MENU_ITEM_PRICE_UPDATED = 3;
+    private static final byte ORDER_ACCEPTED = 4;
+    private static final byte ORDER_REJECTED = 5;
+    private static final byte ORDER_COMPLETED = 6;
+    private static final int HEADER_BYTES = 8;
+    private static final int FILE_MAGIC = 0x57414C31;
+    private static final int FILE_HEADER_BYTES = 12;
+    private static final int GROUP_COMMIT_FLUSH_BYTES = 256 * 1024;
+    static final Duration DEFAULT_GROUP_COMMIT_DELAY = Duration.ofMillis(2);
+
+    private final Path path;
+    private FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final ByteArrayOutputStream recordBuffer;
+    private final DataOutputStream recordOut;
+    private final CRC32 crc;
+    private final long maxBatchDelayNanos;
+    private final Thread groupCommitter;
+    private ByteBuffer pendingBatch;
+    private long base;
+    private long dataStart;
+    private long appendedBytes;
+    private long durableBytes;
+    private IOException groupCommitFailure;
+    private boolean closed;
+
+    public WriteAheadLog(Path path, FsyncPolicy fsyncPolicy) throws IOException {
+        this(path, fsyncPolicy, DEFAULT_GROUP_COMMIT_DELAY);
+    }
+
+    public WriteAheadLog(Path path, FsyncPolicy fsyncPolicy, Duration maxBatchDelay) throws IOException {
+        if (path == null || fsyncPolicy == null) {
+            throw new IllegalArgumentException("Log path and fsync policy cannot be null");
+        }
+        if (maxBatchDelay == null || maxBatchDelay.isNegative()) {
+            throw new IllegalArgumentException("Max batch delay cannot be null or negative");
+        }
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        this.recordBuffer = new ByteArrayOutputStream(256);
+        this.recordOut = new DataOutputStream(recordBuffer);
+        this.crc = new CRC32();
+        this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        readFileHeader();
+        long validEnd = scan(null, base);
+        if (physical(validEnd) < channel.size()) {
+            channel.truncate(physical(validEnd));
+        }
+        channel.position(physical(validEnd));
+        this.appendedBytes = validEnd;
+        this.durableBytes = validEnd;
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            this.pendingBatch = ByteBuffer.allocate(GROUP_COMMIT_FLUSH_BYTES);
+            this.groupCommitter = new Thread(this::groupCommitLoop, "wal-group-commit");
+            groupCommitter.setDaemon(true);
+            groupCommitter.start();
+        } else {
+            this.groupCommitter = null;
+        }
+    }
+
+    private void readFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        if (channel.size() == 0) {
+            header.putInt(FILE_MAGIC).putLong(0).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            base = 0;
+            dataStart = FILE_HEADER_BYTES;
+            return;
+        }
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        if (header.position() == FILE_HEADER_BYTES && header.getInt(0) == FILE_MAGIC) {
+            base = header.getLong(4);
+            dataStart = FILE_HEADER_BYTES;
+        } else {
+            base = 0;
+            dataStart = 0;
+        }
+    }
+
+    private long physical(long position) {
+        return dataStart + position - base;
+    }
+
+    @Override
+    public void restaurantOnboarded(String name, int maxOrders, double rating) {
+        synchronized (this) {
+            try {
+                recordOut.writeByte(RESTAURANT_ONBOARDED);
+                recordOut.writeUTF(name);
+                recordOut.writeInt(maxOrders);
+                recordOut.writeDouble(rating);
+                appendBufferedRecord();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void menuItemAdded(String restaurantName, String itemName, long priceInMinorUnits) {
+        appendMenuRecord(MENU_ITEM_ADDED, restaurantName, itemName, priceInMinorUnits);
+    }
+
+    @Override
+    public void menuItemPriceUpdated(String restaurantName, String itemName, long priceInMinorUnits) {
+        appendMenuRecord(MENU_ITEM_PRICE_UPDATED, restaurantName, itemName, priceInMinorUnits);
+    }
+
+    @Override
+    public void orderAccepted(long orderId, String userName, Map<String, Integer> items, String restaurantName,
+            long totalInMinorUnits) {
+        synchronized (this) {
+            try {
+                recordOut.writeByte(ORDER_ACCEPTED);
+                recordOut.writeLong(orderId);
+                recordOut.writeUTF(userName);
+                writeItems(items);
+                recordOut.writeUTF(restaurantName);
+                recordOut.writeLong(totalInMinorUnits);
+                appendBufferedRecord();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void orderRejected(long orderId, String userName, Map<String, Integer> items) {
+        synchronized (this) {
+            try {
+                recordOut.writeByte(ORDER_REJECTED);
+                recordOut.writeLong(orderId);
+                recordOut.writeUTF(userName);
+                writeItems(items);
+                appendBufferedRecord();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void orderCompleted(long orderId) {
+        synchronized (this) {
+            try {
+                recordOut.writeByte(ORDER_COMPLETED);
+                recordOut.writeLong(orderId);
+                appendBufferedRecord();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+    }
+
+    private void appendMenuRecord(byte type, String restaurantName, String itemName, long priceInMinorUnits) {
+        synchronized (this) {
+            try {
+                recordOut.writeByte(type);
+                recordOut.writeUTF(restaurantName);
+                recordOut.writeUTF(itemName);
+                recordOut.writeLong(priceInMinorUnits);
+                appendBufferedRecord();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+    }
+
+    private void writeItems(Map<String, Integer> items) throws IOException {
+        recordOut.writeInt(items.size());
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            recordOut.writeUTF(entry.getKey());
+            recordOut.writeInt(entry.getValue());
+        }
+    }
+
+    private void appendBufferedRecord() throws IOException {
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            appendToGroupCommit();
+            return;
+        }
+        try {
+            byte[] payload = recordBuffer.toByteArray();
+            crc.reset();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            appendedBytes += record.limit();
+            if (fsyncPolicy == FsyncPolicy.EVERY_RECORD) {
+                channel.force(false);
+            }
+        } finally {
+            recordBuffer.reset();
+        }
+    }
+
+    private void appendToGroupCommit() throws IOException {
+        long recordEnd;
+        try {
+            if (closed) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            if (groupCommitFailure != null) {
+                throw new IOException("Group commit failed", groupCommitFailure);
+            }
+            byte[] payload = recordBuffer.toByteArray();
+            int length = payload.length;
+            crc.reset();
+            crc.update(payload);
+            if (pendingBatch.remaining() < HEADER_BYTES + length) {
+                ByteBuffer grown = ByteBuffer.allocate(
+                        Math.max(pendingBatch.capacity() * 2, pendingBatch.position() + HEADER_BYTES + length));
+                pendingBatch.flip();
+                grown.put(pendingBatch);
+                pendingBatch = grown;
+            }
+            pendingBatch.putInt(length).putInt((int) crc.getValue()).put(payload);
+            appendedBytes += HEADER_BYTES + length;
+            recordEnd = appendedBytes;
+        } finally {
+            recordBuffer.reset();
+        }
+        notifyAll();
+        try {
+            while (durableBytes < recordEnd) {
+                if (groupCommitFailure != null) {
+                    throw new IOException("Group commit failed", groupCommitFailure);
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        }
+    }
+
+    private void groupCommitLoop() {
+        ByteBuffer spare = ByteBuffer.allocate(GROUP_COMMIT_FLUSH_BYTES);
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchEnd;
+                synchronized (this) {
+                    while (pendingBatch.position() == 0 && !closed) {
+                        wait();
+                    }
+                    if (pendingBatch.position() == 0) {
+                        return;
+                    }
+                    long deadline = System.nanoTime() + maxBatchDelayNanos;
+                    long remaining;
+                    while (!closed && pendingBatch.position() < GROUP_COMMIT_FLUSH_BYTES
+                            && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                    batch = pendingBatch;
+                    pendingBatch = spare;
+                    batchEnd = appendedBytes;
+                }
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                batch.clear();
+                spare = batch;
+                synchronized (this) {
+                    durableBytes = batchEnd;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                groupCommitFailure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                groupCommitFailure = new InterruptedIOException("Group commit thread interrupted");
+                notifyAll();
+            }
+        }
+    }
+
+    private UncheckedIOException failed(IOException e) {
+        recordBuffer.reset();
+        return new UncheckedIOException("Failed to append to write-ahead log " + path, e);
+    }
+
+    @Override
+    public synchronized long position() {
+        return appendedBytes;
+    }
+
+    @Override
+    public synchronized long startPosition() {
+        return base;
+    }
+
+    @Override
+    public void checkpoint(long position) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            if (position < 0 || position > appendedBytes) {
+                throw new IllegalArgumentException("Checkpoint position outside the log: " + position);
+            }
+            if (position <= base) {
+                return;
+            }
+            try {
+                while (fsyncPolicy == FsyncPolicy.GROUP_COMMIT && durableBytes < appendedBytes
+                        && groupCommitFailure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for group commit");
+            }
+            if (groupCommitFailure != null) {
+                throw new IOException("Group commit failed", groupCommitFailure);
+            }
+            Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+                header.putInt(FILE_MAGIC).putLong(position).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                long from = physical(position);
+                long end = physical(appendedBytes);
+                while (from < end) {
+                    from += channel.transferTo(from, end - from, out);
+                }
+                out.force(true);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(compacted);
+                throw e;
+            }
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            base = position;
+            dataStart = FILE_HEADER_BYTES;
+            channel.position(physical(appendedBytes));
+        }
+    }
+
+    @Override
+    public void replay(JournalRecordHandler handler, long fromPosition) throws IOException {
+        if (handler == null) {
+            throw new IllegalArgumentException("Replay handler cannot be null");
+        }
+        synchronized (this) {
+            if (fromPosition < base || fromPosition > appendedBytes) {
+                throw new IllegalArgumentException("Replay position outside the log: " + fromPosition);
+            }
+            scan(handler, fromPosition);
+        }
+    }
+
+    private long scan(JournalRecordHandler handler, long fromPosition) throws IOException {
+        long validEnd = fromPosition;
+        CRC32 checksum = new CRC32();
+        FileChannel reader = FileChannel.open(path, StandardOpenOption.READ);
+        reader.position(physical(fromPosition));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(reader)))) {
+            while (true) {
+                int length;
+                int expectedCrc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > reader.size()) {
+                        return validEnd;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return validEnd;
+                }
+                checksum.reset();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expectedCrc) {
+                    return validEnd;
+                }
+                if (handler != null) {
+                    dispatch(new DataInputStream(new ByteArrayInputStream(payload)), handler);
+                }
+                validEnd += HEADER_BYTES + length;
+            }
+        }
+    }
+
+    private static void dispatch(DataInputStream in, JournalRecordHandler handler) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RESTAURANT_ONBOARDED:
+                handler.restaurantOnboarded(in.readUTF(), in.readInt(), in.readDouble());
+                break;
+            case MENU_ITEM_ADDED:
+                handler.menuItemAdded(in.readUTF(), in.readUTF(), in.readLong());
+                break;
+            case MENU_ITEM_PRICE_UPDATED:
+                handler.menuItemPriceUpdated(in.readUTF(), in.readUTF(), in.readLong());
+                break;
+            case ORDER_ACCEPTED:
+                handler.orderAccepted(in.readLong(), in.readUTF(), readItems(in), in.readUTF(), in.readLong());
+                break;
+            case ORDER_REJECTED:
+                handler.orderRejected(in.readLong(), in.readUTF(), readItems(in));
+                break;
+            case ORDER_COMPLETED:
+                handler.orderCompleted(in.readLong());
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log record type: " + type);
+        }
+    }
+
+    private static Map<String, Integer> readItems(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Integer> items = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            items.put(in.readUTF(), in.readInt());
+        }
+        return items;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (groupCommitter != null) {
+            try {
+                groupCommitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while closing write-ahead log");
+            }
+        }
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
+
+class MappedOrderJournal implements OrderJournal {
+    private static final byte RESTAURANT_ONBOARDED = 1;
+    private static final byte ITEM_DEFINED = 2;
+    private static final byte USER_DEFINED = 3;
+    private static final byte MENU_ITEM_ADDED = 4;
+    private static final byte MENU_ITEM_PRICE_UPDATED = 5;
+    private static final byte ORDER_PLACED = 6;
+    private static final byte ORDER_COMPLETED = 7;
+    private static final int HEADER_BYTES = 9;
+    private static final int ORDER_FIXED_BYTES = 8 + 4 + 4 + 1 + 8 + 4;
+    private static final int ORDER_LINE_BYTES = 8;
+    private static final int NO_RESTAURANT = -1;
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String DICTIONARY_FILE = "dictionary.bin";
+    private static final int DICTIONARY_MAGIC = 0x4A444943;
+    static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final int segmentBytes;
+    private final List<MappedByteBuffer> segments;
+    private final Map<String, Integer> restaurantOrdinals;
+    private final Map<String, Integer> itemOrdinals;
+    private final Map<String, Integer> userOrdinals;
+    private final List<String> restaurantNames;
+    private final List<String> itemNames;
+    private final List<String> userNames;
+    private final CRC32 crc;
+    private final CharsetEncoder encoder;
+    private final OrderRecordCursor cursor;
+    private MappedByteBuffer current;
+    private int firstSegment;
+    private boolean closed;
+
+    public MappedOrderJournal(Path directory, FsyncPolicy fsyncPolicy) throws IOException {
+        this(directory, fsyncPolicy, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public MappedOrderJournal(Path directory, FsyncPolicy fsyncPolicy, int segmentBytes) throws IOException {
+        if (directory == null || fsyncPolicy == null) {
+            throw new IllegalArgumentException("Journal directory and fsync policy cannot be null");
+        }
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            throw new IllegalArgumentException("Group commit is not supported by the mapped journal");
+        }
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("Segment size must be at least 4096 bytes");
+        }
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentBytes = segmentBytes;
+        this.segments = new ArrayList<>();
+        this.restaurantOrdinals = new HashMap<>();
+        this.itemOrdinals = new HashMap<>();
+        this.userOrdinals = new HashMap<>();
+        this.restaurantNames = new ArrayList<>();
+        this.itemNames = new ArrayList<>();
+        this.userNames = new ArrayList<>();
+        this.crc = new CRC32();
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.cursor = new OrderRecordCursor();
+        Files.createDirectories(directory);
+        for (Path segment : existingSegments()) {
+            int index = segmentIndex(segment);
+            if (segments.isEmpty()) {
+                firstSegment = index;
+                segments.addAll(Collections.nCopies(index, null));
+            } else if (index != segments.size()) {
+                throw new IOException("Missing mapped journal segment " + segmentPath(segments.size()));
+            }
+            segments.add(map(segment));
+        }
+        if (firstSegment > 0) {
+            loadDictionary();
+        }
+        recover();
+    }
+
+    private static int segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void loadDictionary() throws IOException {
+        Path dictionary = directory.resolve(DICTIONARY_FILE);
+        if (!Files.exists(dictionary)) {
+            throw new IOException("Mapped journal starts at segment " + firstSegment + " but has no " + dictionary);
+        }
+        byte[] content = Files.readAllBytes(dictionary);
+        CRC32 checksum = new CRC32();
+        checksum.update(content, 0, Math.max(0, content.length - 4));
+        if (content.length < 8 || ByteBuffer.wrap(content).getInt(0) != DICTIONARY_MAGIC
+                || ByteBuffer.wrap(content).getInt(content.length - 4) != (int) checksum.getValue()) {
+            throw new IOException("Corrupt mapped journal dictionary " + dictionary);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 4, content.length - 8));
+        readNames(in, restaurantNames, restaurantOrdinals);
+        readNames(in, itemNames, itemOrdinals);
+        readNames(in, userNames, userOrdinals);
+    }
+
+    private static void readNames(DataInputStream in, List<String> names, Map<String, Integer> ordinals)
+            throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            ordinals.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    private void writeDictionary() throws IOException {
+        Path target = directory.resolve(DICTIONARY_FILE);
+        Path temp = directory.resolve(DICTIONARY_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), checksum));
+            out.writeInt(DICTIONARY_MAGIC);
+            for (List<String> names : List.of(restaurantNames, itemNames, userNames)) {
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeUTF(name);
+                }
+            }
+            out.flush();
+            new DataOutputStream(Channels.newOutputStream(channel)).writeInt((int) checksum.getValue());
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<Path> existingSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> found = new ArrayList<>();
+            files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(found::add);
+            Collections.sort(found);
+            return found;
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private void recover() throws IOException {
+        long end = scan(null, startPosition());
+        if (segments.isEmpty()) {
+            current = map(segmentPath(0));
+            segments.add(current);
+            return;
+        }
+        int lastSegment = (int) (end >>> 32);
+        int position = (int) end;
+        for (int i = segments.size() - 1; i > lastSegment; i--) {
+            segments.remove(i);
+            Files.deleteIfExists(segmentPath(i));
+        }
+        current = segments.get(lastSegment);
+        if (position + 4 <= segmentBytes && current.getInt(position) != 0) {
+            for (int i = position; i < segmentBytes; i++) {
+                current.put(i, (byte) 0);
+            }
+        }
+        current.position(position);
+    }
+
+    @Override
+    public synchronized void restaurantOnboarded(String name, int maxOrders, double rating) {
+        int start = beginRecord(RESTAURANT_ONBOARDED, 4 + 4 + maxEncodedLength(name) + 4 + 8);
+        current.putInt(restaurantNames.size());
+        putString(name);
+        current.putInt(maxOrders);
+        current.putDouble(rating);
+        finishRecord(start);
+        defineRestaurant(name);
+    }
+
+    @Override
+    public synchronized void menuItemAdded(String restaurantName, String itemName, long priceInMinorUnits) {
+        appendMenuRecord(MENU_ITEM_ADDED, restaurantName, itemName, priceInMinorUnits);
+    }
+
+    @Override
+    public synchronized void menuItemPriceUpdated(String restaurantName, String itemName, long priceInMinorUnits) {
+        appendMenuRecord(MENU_ITEM_PRICE_UPDATED, restaurantName, itemName, priceInMinorUnits);
+    }
+
+    @Override
+    public synchronized void orderAccepted(long orderId, String userName, Map<String, Integer> items,
+            String restaurantName, long totalInMinorUnits) {
+        appendOrderRecord(orderId, userName, items, restaurantOrdinal(restaurantName), OrderStatus.ACCEPTED,
+                totalInMinorUnits);
+    }
+
+    @Override
+    public synchronized void orderRejected(long orderId, String userName, Map<String, Integer> items) {
+        appendOrderRecord(orderId, userName, items, NO_RESTAURANT, OrderStatus.REJECTED, 0);
+    }
+
+    @Override
+    public synchronized void orderCompleted(long orderId) {
+        int start = beginRecord(ORDER_COMPLETED, 8);
+        current.putLong(orderId);
+        finishRecord(start);
+    }
+
+    private void appendMenuRecord(byte type, String restaurantName, String itemName, long priceInMinorUnits) {
+        int restaurant = restaurantOrdinal(restaurantName);
+        int item = itemOrdinal(itemName);
+        int start = beginRecord(type, 16);
+        current.putInt(restaurant);
+        current.putInt(item);
+        current.putLong(priceInMinorUnits);
+        finishRecord(start);
+    }
+
+    private void appendOrderRecord(long orderId, String userName, Map<String, Integer> items, int restaurant,
+            OrderStatus status, long totalInMinorUnits) {
+        int user = userOrdinal(userName);
+        for (String itemName : items.keySet()) {
+            itemOrdinal(itemName);
+        }
+        int start = beginRecord(ORDER_PLACED, ORDER_FIXED_BYTES + items.size() * ORDER_LINE_BYTES);
+        current.putLong(orderId);
+        current.putInt(user);
+        current.putInt(restaurant);
+        current.put((byte) status.ordinal());
+        current.putLong(totalInMinorUnits);
+        current.putInt(items.size());
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            current.putInt(itemOrdinals.get(entry.getKey()));
+            current.putInt(entry.getValue());
+        }
+        finishRecord(start);
+    }
+
+    private int restaurantOrdinal(String restaurantName) {
+        Integer ordinal = restaurantOrdinals.get(restaurantName);
+        if (ordinal == null) {
+            throw new IllegalStateException("Restaurant was never journaled: " + restaurantName);
+        }
+        return ordinal;
+    }
+
+    private int itemOrdinal(String itemName) {
+        Integer ordinal = itemOrdinals.get(itemName);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        int defined = itemNames.size();
+        int start = beginRecord(ITEM_DEFINED, 4 + 4 + maxEncodedLength(itemName));
+        current.putInt(defined);
+        putString(itemName);
+        finishRecord(start);
+        itemOrdinals.put(itemName, defined);
+        itemNames.add(itemName);
+        return defined;
+    }
+
+    private int userOrdinal(String userName) {
+        Integer ordinal = userOrdinals.get(userName);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        int defined = userNames.size();
+        int start = beginRecord(USER_DEFINED, 4 + 4 + maxEncodedLength(userName));
+        current.putInt(defined);
+        putString(userName);
+        finishRecord(start);
+        userOrdinals.put(userName, defined);
+        userNames.add(userName);
+        return defined;
+    }
+
+    private void defineRestaurant(String name) {
+        restaurantOrdinals.put(name, restaurantNames.size());
+        restaurantNames.add(name);
+    }
+
+    private static int maxEncodedLength(String value) {
+        return value.length() * 3;
+    }
+
+    private int beginRecord(byte type, int maxPayloadBytes) {
+        if (closed) {
+            throw new IllegalStateException("Mapped journal is closed");
+        }
+        int recordBytes = HEADER_BYTES + maxPayloadBytes;
+        if (recordBytes + 4 > segmentBytes) {
+            throw new IllegalArgumentException("Journal record does not fit in a segment: " + recordBytes);
+        }
+        if (current.position() + recordBytes + 4 > segmentBytes) {
+            rollSegment();
+        }
+        int start = current.position();
+        current.put(start + 8, type);
+        current.position(start + HEADER_BYTES);
+        return start;
+    }
+
+    private void finishRecord(int start) {
+        int end = current.position();
+        crc.reset();
+        crc.update(current.duplicate().position(start + 8).limit(end));
+        current.putInt(start + 4, (int) crc.getValue());
+        current.putInt(start, end - start);
+        if (fsyncPolicy == FsyncPolicy.EVERY_RECORD) {
+            current.force(start, end - start);
+        }
+    }
+
+    private void putString(String value) {
+        int lengthPosition = current.position();
+        current.position(lengthPosition + 4);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), current, true);
+        if (result.isError()) {
+            throw new IllegalArgumentException("Cannot encode journal string: " + value);
+        }
+        encoder.flush(current);
+        current.putInt(lengthPosition, current.position() - lengthPosition - 4);
+    }
+
+    private void rollSegment() {
+        try {
+            current.force();
+            current = map(segmentPath(segments.size()));
+            segments.add(current);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll mapped journal segment in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized long position() {
+        return ((long) (segments.size() - 1) << 32) | current.position();
+    }
+
+    @Override
+    public synchronized long startPosition() {
+        return (long) firstSegment << 32;
+    }
+
+    @Override
+    public synchronized void checkpoint(long position) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Mapped journal is closed");
+        }
+        if (position < 0 || position > position()) {
+            throw new IllegalArgumentException("Checkpoint position outside the journal: " + position);
+        }
+        int retireBefore = (int) (position >>> 32);
+        if (retireBefore <= firstSegment) {
+            return;
+        }
+        writeDictionary();
+        for (; firstSegment < retireBefore; firstSegment++) {
+            segments.set(firstSegment, null);
+            Files.deleteIfExists(segmentPath(firstSegment));
+        }
+    }
+
+    @Override
+    public synchronized void replay(JournalRecordHandler handler, long fromPosition) throws IOException {
+        if (handler == null) {
+            throw new IllegalArgumentException("Replay handler cannot be null");
+        }
+        if (fromPosition < startPosition() || fromPosition > position()) {
+            throw new IllegalArgumentException("Replay position outside the journal: " + fromPosition);
+        }
+        scan(handler, fromPosition);
+    }
+
+    private long scan(JournalRecordHandler handler, long fromPosition) throws IOException {
+        for (int index = (int) (fromPosition >>> 32); index < segments.size(); index++) {
+            ByteBuffer segment = segments.get(index).duplicate();
+            int position = index == (int) (fromPosition >>> 32) ? (int) fromPosition : 0;
+            while (position + HEADER_BYTES <= segmentBytes) {
+                int length = segment.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < HEADER_BYTES || position + length > segmentBytes) {
+                    return ((long) index << 32) | position;
+                }
+                crc.reset();
+                crc.update(segment.duplicate().position(position + 8).limit(position + length));
+                if ((int) crc.getValue() != segment.getInt(position + 4)) {
+                    return ((long) index << 32) | position;
+                }
+                dispatch(segment, position + HEADER_BYTES, segment.get(position + 8), handler);
+                position += length;
+            }
+            if (index == segments.size() - 1) {
+                return ((long) index << 32) | position;
+            }
+        }
+        return 0;
+    }
+
+    private void dispatch(ByteBuffer segment, int offset, byte type, JournalRecordHandler handler)
+            throws IOException {
+        switch (type) {
+            case RESTAURANT_ONBOARDED: {
+                int restaurantOrdinal = segment.getInt(offset);
+                int after = offset + 8 + segment.getInt(offset + 4);
+                if (restaurantOrdinal == restaurantNames.size()) {
+                    defineRestaurant(readString(segment, offset + 4));
+                }
+                if (handler != null) {
+                    handler.restaurantOnboarded(restaurantNames.get(restaurantOrdinal), segment.getInt(after),
+                            segment.getDouble(after + 4));
+                }
+                break;
+            }
+            case ITEM_DEFINED:
+            case USER_DEFINED: {
+                int ordinal = segment.getInt(offset);
+                List<String> names = type == ITEM_DEFINED ? itemNames : userNames;
+                Map<String, Integer> ordinals = type == ITEM_DEFINED ? itemOrdinals : userOrdinals;
+                if (ordinal == names.size()) {
+                    String name = readString(segment, offset + 4);
+                    names.add(name);
+                    ordinals.put(name, ordinal);
+                }
+                break;
+            }
+            case MENU_ITEM_ADDED:
+            case MENU_ITEM_PRICE_UPDATED:
+                if (handler != null) {
+                    String restaurantName = restaurantNames.get(segment.getInt(offset));
+                    String itemName = itemNames.get(segment.getInt(offset + 4));
+                    long price = segment.getLong(offset + 8);
+                    if (type == MENU_ITEM_ADDED) {
+                        handler.menuItemAdded(restaurantName, itemName, price);
+                    } else {
+                        handler.menuItemPriceUpdated(restaurantName, itemName, price);
+                    }
+                }
+                break;
+            case ORDER_PLACED:
+                if (handler instanceof OrderRecordHandler) {
+                    cursor.segment = segment;
+                    cursor.offset = offset;
+                    ((OrderRecordHandler) handler).orderPlaced(cursor);
+                    cursor.segment = null;
+                } else if (handler != null) {
+                    long orderId = segment.getLong(offset);
+                    String userName = userNames.get(segment.getInt(offset + 8));
+                    int restaurant = segment.getInt(offset + 12);
+                    byte status = segment.get(offset + 16);
+                    long total = segment.getLong(offset + 17);
+                    int lineCount = segment.getInt(offset + 25);
+                    Map<String, Integer> items = new HashMap<>(lineCount * 2);
+                    int line = offset + ORDER_FIXED_BYTES;
+                    for (int i = 0; i < lineCount; i++, line += ORDER_LINE_BYTES) {
+                        items.put(itemNames.get(segment.getInt(line)), segment.getInt(line + 4));
+                    }
+                    if (status == OrderStatus.ACCEPTED.ordinal()) {
+                        handler.orderAccepted(orderId, userName, items, restaurantNames.get(restaurant), total);
+                    } else {
+                        handler.orderRejected(orderId, userName, items);
+                    }
+                }
+                break;
+            case ORDER_COMPLETED:
+                if (handler != null) {
+                    handler.orderCompleted(segment.getLong(offset));
+                }
+                break;
+            default:
+                throw new IOException("Unknown mapped journal record type: " + type);
+        }
+    }
+
+    private final class OrderRecordCursor implements JournalOrderRecord {
+        private ByteBuffer segment;
+        private int offset;
+
+        @Override
+        public long orderId() {
+            return segment.getLong(offset);
+        }
+
+        @Override
+        public String userName() {
+            return userNames.get(segment.getInt(offset + 8));
+        }
+
+        @Override
+        public boolean isAccepted() {
+            return segment.get(offset + 16) == OrderStatus.ACCEPTED.ordinal();
+        }
+
+        @Override
+        public int restaurantOrdinal() {
+            return segment.getInt(offset + 12);
+        }
+
+        @Override
+        public String restaurantName() {
+            int restaurant = restaurantOrdinal();
+            return restaurant != NO_RESTAURANT ? restaurantNames.get(restaurant) : null;
+        }
+
+        @Override
+        public long totalInMinorUnits() {
+            return segment.getLong(offset + 17);
+        }
+
+        @Override
+        public int lineCount() {
+            return segment.getInt(offset + 25);
+        }
+
+        @Override
+        public String itemName(int line) {
+            return itemNames.get(segment.getInt(offset + ORDER_FIXED_BYTES + line * ORDER_LINE_BYTES));
+        }
+
+        @Override
+        public int quantity(int line) {
+            return segment.getInt(offset + ORDER_FIXED_BYTES + line * ORDER_LINE_BYTES + 4);
+        }
+    }
+
+    private static String readString(ByteBuffer segment, int offset) {
+        int length = segment.getInt(offset);
+        return StandardCharsets.UTF_8.decode(segment.duplicate().position(offset + 4).limit(offset + 4 + length))
+                .toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            current.force();
+        }
+    }
+}
+
+class SnapshotStore {
+    static final long NONE = -1;
+    static final int DEFAULT_RETAINED = 2;
+    private static final int MAGIC = 0x534E4150;
+    private static final int VERSION = 2;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    interface SnapshotWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    interface SnapshotReader {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    private final Path directory;
+    private final int retained;
+
+    public SnapshotStore(Path directory) throws IOException {
+        this(directory, DEFAULT_RETAINED);
+    }
+
+    public SnapshotStore(Path directory, int retained) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Snapshot directory cannot be null");
+        }
+        if (retained <= 0) {
+            throw new IllegalArgumentException("Retained snapshot count must be positive");
+        }
+        this.directory = directory;
+        this.retained = retained;
+        Files.createDirectories(directory);
+    }
+
+    public synchronized void write(long journalPosition, SnapshotWriter writer) throws IOException {
+        if (journalPosition < 0) {
+            throw new IllegalArgumentException("Journal position cannot be negative");
+        }
+        Path target = snapshotPath(journalPosition);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), checksum));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalPosition);
+            writer.write(out);
+            out.flush();
+            new DataOutputStream(Channels.newOutputStream(channel)).writeInt((int) checksum.getValue());
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        List<Long> positions = snapshotPositions();
+        for (int i = retained; i < positions.size(); i++) {
+            Files.deleteIfExists(snapshotPath(positions.get(i)));
+        }
+    }
+
+    public synchronized long loadLatest(long minJournalPosition, long maxJournalPosition, SnapshotReader reader)
+            throws IOException {
+        for (long position : snapshotPositions()) {
+            if (position < minJournalPosition || position > maxJournalPosition) {
+                continue;
+            }
+            byte[] content = Files.readAllBytes(snapshotPath(position));
+            if (!isIntact(content, position)) {
+                continue;
+            }
+            reader.read(new DataInputStream(new ByteArrayInputStream(content, 16, content.length - 20)));
+            return position;
+        }
+        return NONE;
+    }
+
+    public synchronized long oldestPosition() throws IOException {
+        List<Long> positions = snapshotPositions();
+        return positions.isEmpty() ? NONE : positions.get(positions.size() - 1);
+    }
+
+    private static boolean isIntact(byte[] content, long position) {
+        if (content.length < 20) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        CRC32 checksum = new CRC32();
+        checksum.update(content, 0, content.length - 4);
+        return buffer.getInt(content.length - 4) == (int) checksum.getValue() && buffer.getInt(0) == MAGIC
+                && buffer.getInt(4) == VERSION && buffer.getLong(8) == position;
+    }
+
+    private List<Long> snapshotPositions() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Long> positions = new ArrayList<>();
+            files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                    .forEach(name -> positions.add(Long.parseUnsignedLong(
+                            name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()), 16)));
+            positions.sort(Comparator.reverseOrder());
+            return positions;
+        }
+    }
+
+    private Path snapshotPath(long journalPosition) {
+        return directory.resolve(String.format("%s%016x%s", SNAPSHOT_PREFIX, journalPosition, SNAPSHOT_SUFFIX));
+    }
+}
+
+class PagedOrderTable {
+    static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << 19;
+    private static final long FIRST_ORDER_ID = 1;
+    private static final int RELEASED = Integer.MIN_VALUE;
+
+    private static final class OrderPage {
+        private final AtomicReferenceArray<Order> slots;
+        private final AtomicInteger liveSlots;
+
+        OrderPage(int slotCount, int liveSlots) {
+            this.slots = new AtomicReferenceArray<>(slotCount);
+            this.liveSlots = new AtomicInteger(liveSlots);
+        }
+    }
+
+    private static final OrderPage RELEASED_PAGE = new OrderPage(PAGE_SIZE, RELEASED);
+
+    private volatile AtomicReferenceArray<OrderPage> pages;
+    private volatile int highestPage;
+    private Map<Long, Order> overflow;
+    private AtomicInteger pagedCount;
+    private int releasedPages;
+
+    public PagedOrderTable() {
+        pages = new AtomicReferenceArray<>(16);
+        highestPage = -1;
+        overflow = new ConcurrentHashMap<>();
+        pagedCount = new AtomicInteger();
+    }
+
+    public Order put(Order order) {
+        long orderId = order.getOrderId();
+        if (!isPaged(orderId)) {
+            return overflow.put(orderId, order);
+        }
+        OrderPage page = pageFor(pageIndex(orderId));
+        int live;
+        do {
+            live = page.liveSlots.get();
+            if (live < 0) {
+                return overflow.put(orderId, order);
+            }
+        } while (!page.liveSlots.compareAndSet(live, live + 1));
+        Order previous = page.slots.getAndSet(slot(orderId), order);
+        if (previous != null) {
+            page.liveSlots.decrementAndGet();
+        } else {
+            pagedCount.incrementAndGet();
+        }
+        return previous;
+    }
+
+    public Order get(long orderId) {
+        if (isPaged(orderId)) {
+            AtomicReferenceArray<OrderPage> directory = pages;
+            int index = pageIndex(orderId);
+            OrderPage page = index < directory.length() ? directory.get(index) : null;
+            if (page != null) {
+                Order order = page.slots.get(slot(orderId));
+                if (order != null) {
+                    return order;
+                }
+            }
+        }
+        return overflow.get(orderId);
+    }
+
+    public void retire(long orderId) {
+        if (isPaged(orderId)) {
+            AtomicReferenceArray<OrderPage> directory = pages;
+            int index = pageIndex(orderId);
+            OrderPage page = index < directory.length() ? directory.get(index) : null;
+            if (page != null && page.slots.getAndSet(slot(orderId), null) != null) {
+                pagedCount.decrementAndGet();
+                if (page.liveSlots.decrementAndGet() == 0 && index < highestPage) {
+                    tryRelease(index, page);
+                }
+                return;
+            }
+        }
+        overflow.remove(orderId);
+    }
+
+    public int size() {
+        return pagedCount.get() + overflow.size();
+    }
+
+    public synchronized int releasedPageCount() {
+        return releasedPages;
+    }
+
+    public void forEach(Consumer<Order> action) {
+        AtomicReferenceArray<OrderPage> directory = pages;
+        for (int index = 0; index < directory.length(); index++) {
+            OrderPage page = directory.get(index);
+            if (page == null || page == RELEASED_PAGE) {
+                continue;
+            }
+            for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                Order order = page.slots.get(slot);
+                if (order != null) {
+                    action.accept(order);
+                }
+            }
+        }
+        overflow.values().forEach(action);
+    }
+
+    private OrderPage pageFor(int index) {
+        AtomicReferenceArray<OrderPage> directory = pages;
+        OrderPage page = index < directory.length() ? directory.get(index) : null;
+        if (page != null) {
+            return page;
+        }
+        synchronized (this) {
+            directory = pages;
+            if (index >= directory.length()) {
+                AtomicReferenceArray<OrderPage> grown = new AtomicReferenceArray<>(
+                        Math.max(directory.length() * 2, index + 1));
+                for (int i = 0; i < directory.length(); i++) {
+                    grown.set(i, directory.get(i));
+                }
+                pages = grown;
+                directory = grown;
+            }
+            page = directory.get(index);
+            if (page == null) {
+                page = new OrderPage(PAGE_SIZE, 0);
+                directory.set(index, page);
+                if (index > highestPage) {
+                    highestPage = index;
+                    for (int i = 0; i < index; i++) {
+                        OrderPage older = directory.get(i);
+                        if (older != null && older != RELEASED_PAGE && older.liveSlots.compareAndSet(0, RELEASED)) {
+                            directory.set(i, RELEASED_PAGE);
+                            releasedPages++;
+                        }
+                    }
+                }
+            }
+            return page;
+        }
+    }
+
+    private void tryRelease(int index, OrderPage page) {
+        if (page.liveSlots.compareAndSet(0, RELEASED)) {
+            synchronized (this) {
+                pages.set(index, RELEASED_PAGE);
+                releasedPages++;
+            }
+        }
+    }
+
+    private static boolean isPaged(long orderId) {
+        return orderId >= FIRST_ORDER_ID && (orderId - FIRST_ORDER_ID) >>> PAGE_BITS < MAX_PAGES;
+    }
+
+    private static int pageIndex(long orderId) {
+        return (int) ((orderId - FIRST_ORDER_ID) >>> PAGE_BITS);
+    }
+
+    private static int slot(long orderId) {
+        return (int) ((orderId - FIRST_ORDER_ID) & PAGE_MASK);
     }
 }
 
-class RestaurantNotFoundException extends Exception {
-    public RestaurantNotFoundException(String message) {
-        super(message);
+class OrderStore {
+    static final int DEFAULT_COLD_BLOCK_ORDERS = 512;
+    private static final int NO_RESTAURANT = -1;
+
+    interface OrderVisitor {
+        void visit(Order order) throws IOException;
+    }
+
+    private interface KeyWriter<K> {
+        void write(DataOutputStream out, K key) throws IOException;
+    }
+
+    private interface KeyReader<K> {
+        K read(DataInputStream in) throws IOException;
+    }
+
+    private static final class LocatorList {
+        private long[] locators;
+        private int size;
+
+        LocatorList() {
+            this.locators = new long[4];
+        }
+
+        LocatorList(long[] locators) {
+            this.locators = locators.length > 0 ? locators : new long[4];
+            this.size = locators.length;
+        }
+
+        void add(long locator) {
+            if (size == locators.length) {
+                locators = Arrays.copyOf(locators, size * 2);
+            }
+            locators[size++] = locator;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(locators, size);
+        }
+    }
+
+    private static final class LocatorTable {
+        private static final long FREE = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(1024);
+        private long[] values = new long[1024];
+        private int size;
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, FREE);
+            return keys;
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        long get(long orderId) {
+            int mask = keys.length - 1;
+            for (int i = slot(orderId, mask); keys[i] != FREE; i = (i + 1) & mask) {
+                if (keys[i] == orderId) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        LocatorTable copy() {
+            LocatorTable copy = new LocatorTable();
+            copy.keys = keys.clone();
+            copy.values = values.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            long[] entries = new long[size * 2];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != FREE) {
+                    entries[n++] = keys[i];
+                    entries[n++] = values[i];
+                }
+            }
+            writeLongs(out, entries);
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            long[] entries = readLongs(in);
+            for (int i = 0; i < entries.length; i += 2) {
+                put(entries[i], entries[i + 1]);
+            }
+        }
+
+        void put(long orderId, long locator) {
+            if ((size + 1) * 4L > keys.length * 3L) {
+                long[] oldKeys = keys;
+                long[] oldValues = values;
+                keys = newKeys(oldKeys.length * 2);
+                values = new long[oldKeys.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != FREE) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = slot(orderId, mask);
+            while (keys[i] != FREE && keys[i] != orderId) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == FREE) {
+                size++;
+            }
+            keys[i] = orderId;
+            values[i] = locator;
+        }
+    }
+
+    private static final class ColdBlock {
+        private final int[] offsets;
+        private final byte[] compressed;
+        private final int rawLength;
+
+        ColdBlock(int[] offsets, byte[] compressed, int rawLength) {
+            this.offsets = offsets;
+            this.compressed = compressed;
+            this.rawLength = rawLength;
+        }
+
+        byte[] inflate() {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                byte[] raw = new byte[rawLength];
+                int filled = 0;
+                while (filled < rawLength) {
+                    int n = inflater.inflate(raw, filled, rawLength - filled);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Truncated cold order block");
+                    }
+                    filled += n;
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupt cold order block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private PagedOrderTable liveOrders;
+    private IntFunction<Restaurant> restaurantsByOrdinal;
+    private int coldBlockOrders;
+    private List<ColdBlock> sealedBlocks;
+    private ByteArrayOutputStream openBlockBuffer;
+    private DataOutputStream openBlockOut;
+    private int[] openBlockOffsets;
+    private int openBlockCount;
+    private long retiredCount;
+    private long highestRetiredId;
+    private LocatorTable retiredById;
+    private Map<OrderStatus, Set<Order>> liveByStatus;
+    private Map<String, Set<Order>> liveByUser;
+    private Map<Integer, Set<Order>> liveByRestaurant;
+    private Map<OrderStatus, LocatorList> retiredByStatus;
+    private Map<String, LocatorList> retiredByUser;
+    private Map<Integer, LocatorList> retiredByRestaurant;
+
+    public OrderStore(IntFunction<Restaurant> restaurantsByOrdinal) {
+        this(restaurantsByOrdinal, DEFAULT_COLD_BLOCK_ORDERS);
+    }
+
+    public OrderStore(IntFunction<Restaurant> restaurantsByOrdinal, int coldBlockOrders) {
+        if (restaurantsByOrdinal == null) {
+            throw new IllegalArgumentException("Restaurant lookup cannot be null");
+        }
+        if (coldBlockOrders <= 0) {
+            throw new IllegalArgumentException("Cold block size must be positive");
+        }
+        this.liveOrders = new PagedOrderTable();
+        this.restaurantsByOrdinal = restaurantsByOrdinal;
+        this.coldBlockOrders = coldBlockOrders;
+        this.sealedBlocks = new ArrayList<>();
+        this.openBlockBuffer = new ByteArrayOutputStream(coldBlockOrders * 64);
+        this.openBlockOut = new DataOutputStream(openBlockBuffer);
+        this.openBlockOffsets = new int[coldBlockOrders];
+        this.retiredById = new LocatorTable();
+        this.liveByStatus = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            liveByStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        this.liveByUser = new ConcurrentHashMap<>();
+        this.liveByRestaurant = new ConcurrentHashMap<>();
+        this.retiredByStatus = new EnumMap<>(OrderStatus.class);
+        this.retiredByUser = new HashMap<>();
+        this.retiredByRestaurant = new HashMap<>();
+    }
+
+    public void putLive(Order order) {
+        indexLive(order);
+        Order previous = liveOrders.put(order);
+        if (previous != null && previous != order) {
+            unindexLive(previous);
+        }
+    }
+
+    public Order getLive(long orderId) {
+        return liveOrders.get(orderId);
+    }
+
+    public List<Order> liveOrders() {
+        List<Order> live = new ArrayList<>(liveOrders.size());
+        liveOrders.forEach(live::add);
+        return live;
+    }
+
+    public Optional<Order> get(long orderId) {
+        Order order = liveOrders.get(orderId);
+        if (order != null) {
+            return Optional.of(order);
+        }
+        return Optional.ofNullable(getRetired(orderId));
+    }
+
+    public void retire(Order order) {
+        long orderId = order.getOrderId();
+        synchronized (this) {
+            appendRetired(order);
+        }
+        Order live = liveOrders.get(orderId);
+        liveOrders.retire(orderId);
+        if (live != null) {
+            unindexLive(live);
+        }
+    }
+
+    public List<Order> findByStatus(OrderStatus status) {
+        if (status == OrderStatus.COMPLETED || status == OrderStatus.REJECTED) {
+            long[] locators;
+            synchronized (this) {
+                locators = retiredLocators(retiredByStatus, status);
+            }
+            return collect(Collections.emptyList(), null, locators);
+        }
+        return collect(liveByStatus.get(status), status, new long[0]);
+    }
+
+    public List<Order> findByUser(String userName) {
+        long[] locators;
+        synchronized (this) {
+            locators = retiredLocators(retiredByUser, userName);
+        }
+        return collect(liveByUser.getOrDefault(userName, Collections.emptySet()), null, locators);
+    }
+
+    public List<Order> findByRestaurant(int restaurantOrdinal, OrderStatus status) {
+        Collection<Order> live = liveByRestaurant.getOrDefault(restaurantOrdinal, Collections.emptySet());
+        if (status == OrderStatus.PENDING || status == OrderStatus.ACCEPTED) {
+            return collect(live, status, new long[0]);
+        }
+        long[] locators;
+        synchronized (this) {
+            locators = retiredLocators(retiredByRestaurant, restaurantOrdinal);
+        }
+        return collect(live, status, locators);
+    }
+
+    private void indexLive(Order order) {
+        OrderStatus current = order.getStatus();
+        liveByStatus.get(current).add(order);
+        for (Map.Entry<OrderStatus, Set<Order>> byStatus : liveByStatus.entrySet()) {
+            if (byStatus.getKey() != current) {
+                byStatus.getValue().remove(order);
+            }
+        }
+        liveByUser.computeIfAbsent(order.getUserName(), k -> ConcurrentHashMap.newKeySet()).add(order);
+        Restaurant restaurant = order.getAssignedRestaurant();
+        if (restaurant != null) {
+            liveByRestaurant.computeIfAbsent(restaurant.getOrdinal(), k -> ConcurrentHashMap.newKeySet()).add(order);
+        }
+    }
+
+    private void unindexLive(Order order) {
+        for (Set<Order> byStatus : liveByStatus.values()) {
+            byStatus.remove(order);
+        }
+        Set<Order> byUser = liveByUser.get(order.getUserName());
+        if (byUser != null) {
+            byUser.remove(order);
+        }
+        Restaurant restaurant = order.getAssignedRestaurant();
+        Set<Order> byRestaurant = restaurant != null ? liveByRestaurant.get(restaurant.getOrdinal()) : null;
+        if (byRestaurant != null) {
+            byRestaurant.remove(order);
+        }
+    }
+
+    private static <K> long[] retiredLocators(Map<K, LocatorList> index, K key) {
+        LocatorList locators = index.get(key);
+        return locators != null ? locators.toArray() : new long[0];
+    }
+
+    private static <K> void addLocator(Map<K, LocatorList> index, K key, long locator) {
+        index.computeIfAbsent(key, k -> new LocatorList()).add(locator);
+    }
+
+    private List<Order> collect(Collection<Order> live, OrderStatus status, long[] retiredLocators) {
+        TreeMap<Long, Order> byId = new TreeMap<>();
+        for (Order order : live) {
+            if (status == null || order.getStatus() == status) {
+                byId.put(order.getOrderId(), order);
+            }
+        }
+        int i = 0;
+        while (i < retiredLocators.length) {
+            int blockNumber = (int) (retiredLocators[i] >>> 32);
+            byte[] raw = blockBytes(blockNumber);
+            for (; i < retiredLocators.length && (int) (retiredLocators[i] >>> 32) == blockNumber; i++) {
+                Order order = decode(raw, (int) retiredLocators[i]);
+                if (status == null || order.getStatus() == status) {
+                    byId.put(order.getOrderId(), order);
+                }
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    private byte[] blockBytes(int blockNumber) {
+        ColdBlock block;
+        synchronized (this) {
+            if (blockNumber >= sealedBlocks.size()) {
+                return openBlockBuffer.toByteArray();
+            }
+            block = sealedBlocks.get(blockNumber);
+        }
+        return block.inflate();
+    }
+
+    public synchronized boolean isRetired(long orderId) {
+        return retiredById.get(orderId) >= 0;
+    }
+
+    public int liveCount() {
+        return liveOrders.size();
+    }
+
+    public synchronized long retiredCount() {
+        return retiredCount;
+    }
+
+    public synchronized long highestRetiredId() {
+        return highestRetiredId;
+    }
+
+    public void writeColdTier(DataOutputStream out) throws IOException {
+        List<ColdBlock> blocks;
+        byte[] openBlock;
+        int[] openOffsets;
+        long retired;
+        long highestId;
+        LocatorTable byId;
+        Map<OrderStatus, long[]> byStatus;
+        Map<String, long[]> byUser;
+        Map<Integer, long[]> byRestaurant;
+        synchronized (this) {
+            blocks = new ArrayList<>(sealedBlocks);
+            openBlock = openBlockBuffer.toByteArray();
+            openOffsets = Arrays.copyOf(openBlockOffsets, openBlockCount);
+            retired = retiredCount;
+            highestId = highestRetiredId;
+            byId = retiredById.copy();
+            byStatus = copyLocators(retiredByStatus);
+            byUser = copyLocators(retiredByUser);
+            byRestaurant = copyLocators(retiredByRestaurant);
+        }
+        out.writeLong(retired);
+        out.writeLong(highestId);
+        out.writeInt(blocks.size());
+        for (ColdBlock block : blocks) {
+            writeInts(out, block.offsets);
+            out.writeInt(block.rawLength);
+            out.writeInt(block.compressed.length);
+            out.write(block.compressed);
+        }
+        writeInts(out, openOffsets);
+        out.writeInt(openBlock.length);
+        out.write(openBlock);
+        byId.writeTo(out);
+        writeLocators(out, byStatus, (o, status) -> o.writeByte(status.ordinal()));
+        writeLocators(out, byUser, DataOutputStream::writeUTF);
+        writeLocators(out, byRestaurant, DataOutputStream::writeInt);
+    }
+
+    public synchronized void readColdTier(DataInputStream in) throws IOException {
+        if (retiredCount != 0) {
+            throw new IllegalStateException("Cold tier can only be restored into an empty store");
+        }
+        retiredCount = in.readLong();
+        highestRetiredId = in.readLong();
+        for (int n = in.readInt(); n > 0; n--) {
+            int[] offsets = readInts(in);
+            int rawLength = in.readInt();
+            byte[] compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            sealedBlocks.add(new ColdBlock(offsets, compressed, rawLength));
+        }
+        int[] offsets = readInts(in);
+        if (offsets.length > coldBlockOrders) {
+            throw new IOException("Open cold block exceeds the configured block size");
+        }
+        System.arraycopy(offsets, 0, openBlockOffsets, 0, offsets.length);
+        openBlockCount = offsets.length;
+        byte[] openBlock = new byte[in.readInt()];
+        in.readFully(openBlock);
+        openBlockBuffer.write(openBlock);
+        retiredById.readFrom(in);
+        OrderStatus[] statuses = OrderStatus.values();
+        readLocators(in, retiredByStatus, i -> statuses[i.readByte()]);
+        readLocators(in, retiredByUser, i -> i.readUTF());
+        readLocators(in, retiredByRestaurant, DataInputStream::readInt);
+    }
+
+    private static <K> Map<K, long[]> copyLocators(Map<K, LocatorList> index) {
+        Map<K, long[]> copy = new HashMap<>(index.size() * 2);
+        for (Map.Entry<K, LocatorList> entry : index.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return copy;
+    }
+
+    private static <K> void writeLocators(DataOutputStream out, Map<K, long[]> index, KeyWriter<K> keyWriter)
+            throws IOException {
+        out.writeInt(index.size());
+        for (Map.Entry<K, long[]> entry : index.entrySet()) {
+            keyWriter.write(out, entry.getKey());
+            writeLongs(out, entry.getValue());
+        }
+    }
+
+    private static <K> void readLocators(DataInputStream in, Map<K, LocatorList> index, KeyReader<K> keyReader)
+            throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            K key = keyReader.read(in);
+            index.put(key, new LocatorList(readLongs(in)));
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array());
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt() * Integer.BYTES];
+        in.readFully(bytes);
+        int[] values = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        return values;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        buffer.asLongBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array());
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt() * Long.BYTES];
+        in.readFully(bytes);
+        long[] values = new long[bytes.length / Long.BYTES];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(values);
+        return values;
+    }
+
+    public void forEach(OrderVisitor visitor) throws IOException {
+        for (Order order : liveOrders()) {
+            visitor.visit(order);
+        }
+        int sealed;
+        synchronized (this) {
+            sealed = sealedBlocks.size();
+        }
+        for (int i = 0; i < sealed; i++) {
+            ColdBlock block;
+            synchronized (this) {
+                block = sealedBlocks.get(i);
+            }
+            byte[] raw = block.inflate();
+            for (int offset : block.offsets) {
+                visitor.visit(decode(raw, offset));
+            }
+        }
+        byte[] raw;
+        int[] offsets;
+        synchronized (this) {
+            raw = openBlockBuffer.toByteArray();
+            offsets = Arrays.copyOf(openBlockOffsets, openBlockCount);
+        }
+        for (int offset : offsets) {
+            visitor.visit(decode(raw, offset));
+        }
+    }
+
+    public List<Order> allOrders() {
+        TreeMap<Long, Order> byId = new TreeMap<>();
+        try {
+            forEach(order -> byId.put(order.getOrderId(), order));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    private Order getRetired(long orderId) {
+        long locator;
+        synchronized (this) {
+            locator = retiredById.get(orderId);
+        }
+        if (locator < 0) {
+            return null;
+        }
+        return decode(blockBytes((int) (locator >>> 32)), (int) locator);
+    }
+
+    private void appendRetired(Order order) {
+        int offset = openBlockBuffer.size();
+        openBlockOffsets[openBlockCount] = offset;
+        try {
+            encode(order, openBlockOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long locator = ((long) sealedBlocks.size() << 32) | offset;
+        retiredById.put(order.getOrderId(), locator);
+        highestRetiredId = Math.max(highestRetiredId, order.getOrderId());
+        addLocator(retiredByStatus, order.getStatus(), locator);
+        addLocator(retiredByUser, order.getUserName(), locator);
+        if (order.getAssignedRestaurant() != null) {
+            addLocator(retiredByRestaurant, order.getAssignedRestaurant().getOrdinal(), locator);
+        }
+        openBlockCount++;
+        retiredCount++;
+        if (openBlockCount == coldBlockOrders) {
+            sealOpenBlock();
+        }
+    }
+
+    private void sealOpenBlock() {
+        byte[] raw = openBlockBuffer.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+        sealedBlocks.add(new ColdBlock(Arrays.copyOf(openBlockOffsets, openBlockCount), compressed.toByteArray(),
+                raw.length));
+        openBlockBuffer.reset();
+        openBlockCount = 0;
+    }
+
+    private static void encode(Order order, DataOutputStream out) throws IOException {
+        Restaurant restaurant = order.getAssignedRestaurant();
+        out.writeLong(order.getOrderId());
+        out.writeUTF(order.getUserName());
+        out.writeByte(order.getStatus().ordinal());
+        out.writeInt(restaurant != null ? restaurant.getOrdinal() : NO_RESTAURANT);
+        out.writeLong(order.getTotalCostInMinorUnits());
+        Map<String, Integer> items = order.getItems();
+        out.writeShort(items.size());
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private Order decode(byte[] raw, int offset) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw, offset, raw.length - offset));
+            long orderId = in.readLong();
+            String userName = in.readUTF();
+            OrderStatus status = OrderStatus.values()[in.readByte()];
+            int restaurantOrdinal = in.readInt();
+            long total = in.readLong();
+            int itemCount = in.readUnsignedShort();
+            Map<String, Integer> items = new HashMap<>(itemCount * 2);
+            for (int i = 0; i < itemCount; i++) {
+                items.put(in.readUTF(), in.readInt());
+            }
+            Order order = new Order(orderId, userName, items);
+            if (status == OrderStatus.COMPLETED) {
+                order.restoreAccepted(restaurantsByOrdinal.apply(restaurantOrdinal), total);
+                order.restoreCompleted();
+            } else {
+                order.markRejected();
+            }
+            return order;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
 
-class FoodOrderingSystem {
+class FoodOrderingSystem implements AutoCloseable {
+    private static final int ASYNC_QUEUE_CAPACITY = 1024;
+
     private Map<String, Restaurant> restaurants;
-    private Map<Integer, Order> orders;
-    private SelectionStrategy currentStrategy;
+    private OrderStore orders;
+    private RestaurantIndex restaurantIndex;
+    private volatile SelectionStrategy currentStrategy;
+    private OrderIdGenerator orderIdGenerator;
+    private volatile OrderMetrics metrics;
+    private volatile OrderEventLogger eventLogger;
+    private OrderJournal journal;
+    private SnapshotStore snapshotStore;
+    private StampedLock snapshotBarrier;
+    private ScheduledExecutorService snapshotScheduler;
+    private ExecutorService asyncExecutor;
+    private volatile AdmissionQueue admissionQueue;
+    private ScheduledThreadPoolExecutor admissionTimer;
+    private boolean closed;
 
     public FoodOrderingSystem() {
-        restaurants = new HashMap<>();
-        orders = new HashMap<>();
+        this(new SequentialOrderIdGenerator());
+    }
+
+    public FoodOrderingSystem(OrderIdGenerator orderIdGenerator) {
+        if (orderIdGenerator == null)
+            throw new IllegalArgumentException("Order id generator cannot be null");
+        this.orderIdGenerator = orderIdGenerator;
+        restaurants = new ConcurrentHashMap<>();
+        restaurantIndex = new RestaurantIndex();
+        orders = new OrderStore(restaurantIndex::get);
         currentStrategy = new LowestCostStrategy();
+        metrics = OrderMetrics.DISABLED;
+        eventLogger = new ConsoleEventLogger();
+        snapshotBarrier = new StampedLock();
+    }
+
+    public FoodOrderingSystem(OrderIdGenerator orderIdGenerator, OrderJournal journal) throws IOException {
+        this(orderIdGenerator, journal, null);
+    }
+
+    public FoodOrderingSystem(OrderIdGenerator orderIdGenerator, OrderJournal journal, SnapshotStore snapshotStore)
+            throws IOException {
+        this(orderIdGenerator);
+        if (journal == null)
+            throw new IllegalArgumentException("Order journal cannot be null");
+        long replayFrom = journal.startPosition();
+        long snapshotPosition = SnapshotStore.NONE;
+        if (snapshotStore != null) {
+            snapshotPosition = snapshotStore.loadLatest(replayFrom, journal.position(), this::readSnapshot);
+        }
+        if (snapshotPosition != SnapshotStore.NONE) {
+            replayFrom = snapshotPosition;
+        } else if (replayFrom > 0) {
+            throw new IOException("Journal history before position " + replayFrom
+                    + " was checkpointed and no snapshot covers it");
+        }
+        journal.replay(new JournalReplayer(), replayFrom);
+        restoreRestaurantOrderCounts();
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+    }
+
+    private class JournalReplayer implements OrderRecordHandler {
+        private final List<Restaurant> restaurantsByJournalOrdinal = new ArrayList<>();
+
+        @Override
+        public void restaurantOnboarded(String name, int maxOrders, double rating) {
+            restaurants.computeIfAbsent(name, n -> restaurantIndex.register(n, maxOrders, rating));
+        }
+
+        @Override
+        public void menuItemAdded(String restaurantName, String itemName, long priceInMinorUnits) {
+            Restaurant restaurant = replayedRestaurant(restaurantName);
+            restaurant.addMenuItem(itemName, Money.fromMinorUnits(priceInMinorUnits));
+            restaurantIndex.indexMenuItem(restaurant, itemName);
+        }
+
+        @Override
+        public void menuItemPriceUpdated(String restaurantName, String itemName, long priceInMinorUnits) {
+            Restaurant restaurant = replayedRestaurant(restaurantName);
+            restaurant.updateMenuItemPrice(itemName, Money.fromMinorUnits(priceInMinorUnits));
+            restaurantIndex.indexMenuItem(restaurant, itemName);
+        }
+
+        @Override
+        public void orderAccepted(long orderId, String userName, Map<String, Integer> items, String restaurantName,
+                long totalInMinorUnits) {
+            orderIdGenerator.advancePast(orderId);
+            if (orders.isRetired(orderId)) {
+                return;
+            }
+            Order order = new Order(orderId, userName, items);
+            order.restoreAccepted(replayedRestaurant(restaurantName), totalInMinorUnits);
+            orders.putLive(order);
+        }
+
+        @Override
+        public void orderRejected(long orderId, String userName, Map<String, Integer> items) {
+            orderIdGenerator.advancePast(orderId);
+            if (orders.isRetired(orderId)) {
+                return;
+            }
+            Order order = new Order(orderId, userName, items);
+            order.markRejected();
+            orders.retire(order);
+        }
+
+        @Override
+        public void orderPlaced(JournalOrderRecord record) {
+            long orderId = record.orderId();
+            orderIdGenerator.advancePast(orderId);
+            if (orders.isRetired(orderId)) {
+                return;
+            }
+            int lineCount = record.lineCount();
+            Map<String, Integer> items = new HashMap<>(lineCount * 2);
+            for (int line = 0; line < lineCount; line++) {
+                items.put(record.itemName(line), record.quantity(line));
+            }
+            Order order = new Order(orderId, record.userName(), items);
+            if (record.isAccepted()) {
+                order.restoreAccepted(journalRestaurant(record), record.totalInMinorUnits());
+                orders.putLive(order);
+            } else {
+                order.markRejected();
+                orders.retire(order);
+            }
+        }
+
+        private Restaurant journalRestaurant(JournalOrderRecord record) {
+            int ordinal = record.restaurantOrdinal();
+            while (restaurantsByJournalOrdinal.size() <= ordinal) {
+                restaurantsByJournalOrdinal.add(null);
+            }
+            Restaurant restaurant = restaurantsByJournalOrdinal.get(ordinal);
+            if (restaurant == null) {
+                restaurant = replayedRestaurant(record.restaurantName());
+                restaurantsByJournalOrdinal.set(ordinal, restaurant);
+            }
+            return restaurant;
+        }
+
+        @Override
+        public void orderCompleted(long orderId) {
+            Order order = orders.getLive(orderId);
+            if (order == null) {
+                if (orders.isRetired(orderId)) {
+                    return;
+                }
+                throw new IllegalStateException("Journal completes unknown order: " + orderId);
+            }
+            order.restoreCompleted();
+            orders.retire(order);
+        }
+
+        private Restaurant replayedRestaurant(String restaurantName) {
+            Restaurant restaurant = restaurants.get(restaurantName);
+            if (restaurant == null) {
+                throw new IllegalStateException("Journal references unknown restaurant: " + restaurantName);
+            }
+            return restaurant;
+        }
+    }
+
+    public long takeSnapshot() throws IOException {
+        if (snapshotStore == null) {
+            throw new IllegalStateException("Snapshots require a journal and a snapshot store");
+        }
+        long stamp = snapshotBarrier.writeLock();
+        long journalPosition;
+        try {
+            journalPosition = journal.position();
+        } finally {
+            snapshotBarrier.unlockWrite(stamp);
+        }
+        snapshotStore.write(journalPosition, this::writeSnapshot);
+        journal.checkpoint(snapshotStore.oldestPosition());
+        return journalPosition;
+    }
+
+    public synchronized ScheduledFuture<?> scheduleSnapshots(Duration interval) {
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        if (snapshotStore == null) {
+            throw new IllegalStateException("Snapshots require a journal and a snapshot store");
+        }
+        if (snapshotScheduler == null) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "order-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long periodNanos = interval.toNanos();
+        return snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write snapshot", e);
+            }
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        int restaurantCount = restaurantIndex.size();
+        out.writeInt(restaurantCount);
+        for (int ordinal = 0; ordinal < restaurantCount; ordinal++) {
+            Restaurant restaurant = restaurantIndex.get(ordinal);
+            out.writeUTF(restaurant.getName());
+            out.writeInt(restaurant.getMaxOrders());
+            out.writeDouble(restaurant.getRating());
+            Map<String, MenuItem> menu = restaurant.getMenu();
+            out.writeInt(menu.size());
+            for (MenuItem item : menu.values()) {
+                out.writeUTF(item.getName());
+                out.writeLong(item.getPriceInMinorUnits());
+            }
+        }
+        for (Order order : orders.liveOrders()) {
+            if (order.getStatus() != OrderStatus.ACCEPTED) {
+                continue;
+            }
+            out.writeBoolean(true);
+            out.writeLong(order.getOrderId());
+            out.writeUTF(order.getUserName());
+            out.writeUTF(order.getAssignedRestaurant().getName());
+            out.writeLong(order.getTotalCostInMinorUnits());
+            Map<String, Integer> items = order.getItems();
+            out.writeInt(items.size());
+            for (Map.Entry<String, Integer> entry : items.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+        out.writeBoolean(false);
+        orders.writeColdTier(out);
+    }
+
+    private void readSnapshot(DataInputStream in) throws IOException {
+        int restaurantCount = in.readInt();
+        for (int ordinal = 0; ordinal < restaurantCount; ordinal++) {
+            String name = in.readUTF();
+            int maxOrders = in.readInt();
+            double rating = in.readDouble();
+            Restaurant restaurant = restaurantIndex.register(name, maxOrders, rating);
+            restaurants.put(name, restaurant);
+            int menuSize = in.readInt();
+            for (int i = 0; i < menuSize; i++) {
+                String itemName = in.readUTF();
+                restaurant.addMenuItem(itemName, Money.fromMinorUnits(in.readLong()));
+                restaurantIndex.indexMenuItem(restaurant, itemName);
+            }
+        }
+        List<Order> live = new ArrayList<>();
+        while (in.readBoolean()) {
+            long orderId = in.readLong();
+            String userName = in.readUTF();
+            Restaurant restaurant = restaurants.get(in.readUTF());
+            long total = in.readLong();
+            int itemCount = in.readInt();
+            Map<String, Integer> items = new HashMap<>(itemCount * 2);
+            for (int i = 0; i < itemCount; i++) {
+                items.put(in.readUTF(), in.readInt());
+            }
+            Order order = new Order(orderId, userName, items);
+            order.restoreAccepted(restaurant, total);
+            live.add(order);
+        }
+        orders.readColdTier(in);
+        orderIdGenerator.advancePast(orders.highestRetiredId());
+        for (Order order : live) {
+            orderIdGenerator.advancePast(order.getOrderId());
+            if (!orders.isRetired(order.getOrderId())) {
+                orders.putLive(order);
+            }
+        }
+    }
+
+    private long enterJournaledChange() {
+        return journal != null ? snapshotBarrier.readLock() : 0;
+    }
+
+    private void exitJournaledChange(long stamp) {
+        if (stamp != 0) {
+            snapshotBarrier.unlockRead(stamp);
+        }
+    }
+
+    private void restoreRestaurantOrderCounts() {
+        Map<Restaurant, Integer> acceptedCounts = new HashMap<>();
+        for (Order o : orders.liveOrders()) {
+            if (o.getStatus() == OrderStatus.ACCEPTED) {
+                acceptedCounts.merge(o.getAssignedRestaurant(), 1, Integer::sum);
+            }
+        }
+        for (Restaurant r : restaurants.values()) {
+            r.restoreOrderCount(acceptedCounts.getOrDefault(r, 0));
+        }
+    }
+
+    public void setEventLogger(OrderEventLogger logger) {
+        eventLogger = (logger != null) ? logger : OrderEventLogger.DISABLED;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        metrics = (registry != null) ? new OrderMetrics(registry) : OrderMetrics.DISABLED;
+    }
+
+    public synchronized void enableAdmissionQueue(int capacity, Duration timeout) {
+        if (admissionQueue != null) {
+            throw new IllegalStateException("Admission queue is already enabled");
+        }
+        AdmissionQueue queue = new AdmissionQueue(capacity, timeout);
+        admissionTimer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "order-admission-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        admissionTimer.setRemoveOnCancelPolicy(true);
+        admissionQueue = queue;
+    }
+
+    public int getQueuedOrderCount() {
+        AdmissionQueue queue = admissionQueue;
+        return queue != null ? queue.size() : 0;
     }
 
     public void setSelectionStrategy(SelectionStrategy strategy) {
@@ -284,70 +4483,575 @@ class FoodOrderingSystem {
     }
 
     public void onboardRestaurant(String name, int maxOrders, double rating) {
-        if (restaurants.containsKey(name)) {
+        Restaurant.validate(name, maxOrders, rating);
+        boolean[] created = new boolean[1];
+        long stamp = enterJournaledChange();
+        try {
+            restaurants.computeIfAbsent(name, n -> {
+                if (journal != null) {
+                    journal.restaurantOnboarded(n, maxOrders, rating);
+                }
+                created[0] = true;
+                return restaurantIndex.register(n, maxOrders, rating);
+            });
+        } finally {
+            exitJournaledChange(stamp);
+        }
+        if (!created[0]) {
             throw new IllegalArgumentException("Restaurant already exists: " + name);
         }
-        Restaurant restaurant = new Restaurant(name, maxOrders, rating);
-        restaurants.put(name, restaurant);
-        System.out.println("Restaurant onboarded successfully: " + name);
+        eventLogger.restaurantOnboarded(name);
     }
 
-    public void addMenuItemToRestaurant(String restaurantName, String itemName, BigDecimal price)
-            throws RestaurantNotFoundException {
-        Restaurant restaurant = restaurants.get(restaurantName);
+    private Restaurant findRestaurant(String restaurantName) throws RestaurantNotFoundException {
+        Restaurant restaurant = restaurantName == null ? null : restaurants.get(restaurantName);
         if (restaurant == null) {
             throw new RestaurantNotFoundException("Restaurant not found: " + restaurantName);
         }
-        restaurant.addMenuItem(itemName, price);
-        System.out.println("Menu item added to " + restaurantName + ": " + itemName + " - " + price);
+        return restaurant;
+    }
+
+    public void addMenuItemToRestaurant(String restaurantName, String itemName, BigDecimal price)
+            throws RestaurantNotFoundException {
+        Restaurant restaurant = findRestaurant(restaurantName);
+        long stamp = enterJournaledChange();
+        try {
+            synchronized (restaurant) {
+                restaurant.addMenuItem(itemName, price);
+                restaurantIndex.indexMenuItem(restaurant, itemName);
+                if (journal != null) {
+                    journal.menuItemAdded(restaurantName, itemName, Money.toMinorUnits(price));
+                }
+            }
+        } finally {
+            exitJournaledChange(stamp);
+        }
+        eventLogger.menuItemAdded(restaurantName, itemName, price);
     }
 
     public void updateMenuItemPrice(String restaurantName, String itemName, BigDecimal price)
             throws RestaurantNotFoundException {
-        Restaurant restaurant = restaurants.get(restaurantName);
-        if (restaurant == null) {
-            throw new RestaurantNotFoundException("Restaurant not found: " + restaurantName);
+        Restaurant restaurant = findRestaurant(restaurantName);
+        long stamp = enterJournaledChange();
+        try {
+            synchronized (restaurant) {
+                restaurant.updateMenuItemPrice(itemName, price);
+                restaurantIndex.indexMenuItem(restaurant, itemName);
+                if (journal != null) {
+                    journal.menuItemPriceUpdated(restaurantName, itemName, Money.toMinorUnits(price));
+                }
+            }
+        } finally {
+            exitJournaledChange(stamp);
         }
-        restaurant.updateMenuItemPrice(itemName, price);
-        System.out.println("Menu item updated in " + restaurantName + ": " + itemName + " - " + price);
+        eventLogger.menuItemPriceUpdated(restaurantName, itemName, price);
     }
 
     public Order placeOrder(String userName, Map<String, Integer> items, SelectionStrategy strategy)
             throws OrderProcessingException {
-        Order order = new Order(userName, items);
+        OrderMetrics metrics = this.metrics;
+        long startNanos = metrics.startTimer();
+        Order.validate(userName, items);
+        Order order = new Order(orderIdGenerator.nextId(), userName, items);
         SelectionStrategy strategyToUse = (strategy != null) ? strategy : currentStrategy;
-        List<Restaurant> eligibleRestaurants = new ArrayList<>();
-        for (Restaurant r : restaurants.values()) {
-            if (r.hasAllItems(items) && r.canAcceptOrder()) {
-                eligibleRestaurants.add(r);
+        long indexedStartNanos = metrics.startTimer();
+        Optional<RestaurantSelection> indexed = strategyToUse.selectFromIndex(restaurantIndex, items);
+        if (indexed.isPresent()) {
+            metrics.selectionFinished(indexedStartNanos);
+            if (metrics.isEnabled()) {
+                RestaurantBitmap candidates = restaurantIndex.rarestPosting(items);
+                metrics.eligibleRestaurantsFound(candidates != null ? candidates.cardinality() : 0);
+            }
+            if (order.assignToRestaurant(indexed.get())) {
+                return acceptOrder(order, indexed.get().getRestaurant(), items, metrics, startNanos);
             }
         }
+        List<Restaurant> eligibleRestaurants = restaurantIndex.findEligible(items);
+        metrics.eligibleRestaurantsFound(eligibleRestaurants.size());
         if (eligibleRestaurants.isEmpty()) {
-            order.markRejected();
-            orders.put(order.getOrderId(), order);
+            return queueOrReject(order, metrics, startNanos);
+        }
+        while (!eligibleRestaurants.isEmpty()) {
+            long selectionStartNanos = metrics.startTimer();
+            Optional<RestaurantSelection> selection = strategyToUse.selectRestaurant(eligibleRestaurants, items);
+            metrics.selectionFinished(selectionStartNanos);
+            if (!selection.isPresent()) {
+                break;
+            }
+            Restaurant selectedRestaurant = selection.get().getRestaurant();
+            if (!order.assignToRestaurant(selection.get())) {
+                eligibleRestaurants.remove(selectedRestaurant);
+                continue;
+            }
+            return acceptOrder(order, selectedRestaurant, items, metrics, startNanos);
+        }
+        if (eligibleRestaurants.isEmpty()) {
+            return queueOrReject(order, metrics, startNanos);
+        }
+        rejectOrder(order, metrics, startNanos);
+        throw new OrderProcessingException("Cannot assign the order - strategy failed to select restaurant");
+    }
+
+    private Order queueOrReject(Order order, OrderMetrics metrics, long startNanos)
+            throws OrderProcessingException {
+        AdmissionQueue queue = admissionQueue;
+        List<Restaurant> servingRestaurants = queue != null
+                ? restaurantIndex.findServing(order.getItems()) : Collections.emptyList();
+        if (servingRestaurants.isEmpty()) {
+            rejectOrder(order, metrics, startNanos);
             throw new OrderProcessingException("Cannot assign the order - no eligible restaurants found");
         }
-        Optional<Restaurant> selectedRestaurant = strategyToUse.selectRestaurant(eligibleRestaurants, items);
-        if (selectedRestaurant.isPresent()) {
-            order.assignToRestaurant(selectedRestaurant.get());
-            orders.put(order.getOrderId(), order);
-            System.out.println("Order " + order.getOrderId() + " assigned to " + selectedRestaurant.get().getName()
-                    + " (Total: " + order.getTotalCost() + ")");
-            return order;
-        } else {
-            order.markRejected();
-            orders.put(order.getOrderId(), order);
-            throw new OrderProcessingException("Cannot assign the order - strategy failed to select restaurant");
+        AdmissionQueue.Entry entry = queue.offer(order, startNanos, servingRestaurants);
+        if (entry == null) {
+            rejectOrder(order, metrics, startNanos);
+            throw new AdmissionQueueFullException("Cannot assign the order - admission queue is full");
+        }
+        orders.putLive(order);
+        queue.publish(entry);
+        entry.setExpiry(admissionTimer.schedule(() -> expireQueued(queue, entry),
+                queue.getTimeout().toNanos(), TimeUnit.NANOSECONDS));
+        for (Restaurant restaurant : servingRestaurants) {
+            dispatchQueued(restaurant);
         }
+        return order;
     }
 
-    public void markOrderCompleted(int orderId) throws OrderProcessingException {
-        Order order = orders.get(orderId);
-        if (order == null) {
-            throw new OrderProcessingException("Order not found: " + orderId);
+    private void dispatchQueued(Restaurant restaurant) {
+        AdmissionQueue queue = admissionQueue;
+        if (queue == null) {
+            return;
         }
-        order.markCompleted();
-        System.out.println("Order " + orderId + " marked as completed");
+        AdmissionQueue.Entry entry;
+        while ((entry = queue.dispatchTo(restaurant)) != null) {
+            entry.cancelExpiry();
+            Order order = entry.getOrder();
+            try {
+                acceptOrder(order, restaurant, order.getItems(), metrics, entry.getStartNanos());
+                queue.admitted(entry);
+            } catch (RuntimeException e) {
+                try {
+                    rejectOrder(order, metrics, entry.getStartNanos());
+                } finally {
+                    queue.refused(entry, new OrderProcessingException(
+                            "Cannot assign the order - accepting queued order failed: " + e.getMessage()));
+                }
+            }
+        }
+    }
+
+    private void expireQueued(AdmissionQueue queue, AdmissionQueue.Entry entry) {
+        if (queue.remove(entry)) {
+            try {
+                rejectOrder(entry.getOrder(), metrics, entry.getStartNanos());
+            } finally {
+                queue.refused(entry, new OrderProcessingException("Cannot assign the order - admission timed out"));
+            }
+        }
+    }
+
+    public CompletableFuture<Order> awaitAdmission(long orderId) {
+        AdmissionQueue queue = admissionQueue;
+        AdmissionQueue.Entry entry = queue != null ? queue.find(orderId) : null;
+        if (entry != null) {
+            return entry.getOutcome();
+        }
+        Optional<Order> order = orders.get(orderId);
+        if (!order.isPresent()) {
+            return CompletableFuture.failedFuture(new OrderProcessingException("Order not found: " + orderId));
+        }
+        if (order.get().getStatus() == OrderStatus.REJECTED) {
+            return CompletableFuture.failedFuture(
+                    new OrderProcessingException("Cannot assign the order - order " + orderId + " was rejected"));
+        }
+        return CompletableFuture.completedFuture(order.get());
+    }
+
+    public CompletableFuture<Order> placeOrderAsync(String userName, Map<String, Integer> items,
+            SelectionStrategy strategy) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return placeOrder(userName, items, strategy);
+                } catch (OrderProcessingException e) {
+                    throw new CompletionException(e);
+                }
+            }, asyncExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(asyncRejected(e));
+        }
+    }
+
+    public List<OrderResult> placeOrders(List<OrderRequest> requests) {
+        return placeOrders(requests, null);
+    }
+
+    public List<OrderResult> placeOrders(List<OrderRequest> requests, SelectionStrategy strategy) {
+        OrderBatch batch = new OrderBatch(requests);
+        SelectionStrategy strategyToUse = (strategy != null) ? strategy : currentStrategy;
+        for (Map.Entry<Map<String, Integer>, List<Integer>> group : batch.bySignature.entrySet()) {
+            batch.assignByRanking(group.getKey(), group.getValue(), strategyToUse);
+        }
+        return batch.results();
+    }
+
+    public List<OrderResult> placeOrdersOptimally(List<OrderRequest> requests) {
+        OrderBatch batch = new OrderBatch(requests);
+        List<Map<String, Integer>> signatures = new ArrayList<>(batch.bySignature.keySet());
+        MinCostFlow network = new MinCostFlow();
+        int source = network.addNode();
+        int sink = network.addNode();
+        Map<Restaurant, Integer> restaurantNodes = new HashMap<>();
+        List<List<Integer>> routes = new ArrayList<>(signatures.size());
+        List<List<RestaurantSelection>> routeSelections = new ArrayList<>(signatures.size());
+        int firstSignatureNode = -1;
+        List<Iterator<RestaurantIndex.PricedRestaurant>> candidates = new ArrayList<>(signatures.size());
+        for (Map<String, Integer> items : signatures) {
+            int signatureNode = network.addNode();
+            if (firstSignatureNode < 0) {
+                firstSignatureNode = signatureNode;
+            }
+            network.addEdge(source, signatureNode, batch.bySignature.get(items).size(), 0);
+            candidates.add(restaurantIndex.restaurantsByOrderCost(items));
+            routes.add(new ArrayList<>());
+            routeSelections.add(new ArrayList<>());
+        }
+        int signatureBase = firstSignatureNode;
+        RestaurantIndex.PricedRestaurant[] lookahead = new RestaurantIndex.PricedRestaurant[signatures.size()];
+        MinCostFlow.ArcGenerator cheapestRestaurants = new MinCostFlow.ArcGenerator() {
+            @Override
+            public long nextCost(int node) {
+                int g = node - signatureBase;
+                if (g < 0 || g >= signatures.size()) {
+                    return Long.MAX_VALUE;
+                }
+                Iterator<RestaurantIndex.PricedRestaurant> it = candidates.get(g);
+                while (lookahead[g] == null && it.hasNext()) {
+                    RestaurantIndex.PricedRestaurant candidate = it.next();
+                    if (candidate.getRestaurant().canAcceptOrder()) {
+                        lookahead[g] = candidate;
+                    }
+                }
+                return lookahead[g] != null ? lookahead[g].getPriceInMinorUnits() : Long.MAX_VALUE;
+            }
+
+            @Override
+            public int addNextArc(int node) {
+                int g = node - signatureBase;
+                Restaurant r = lookahead[g].getRestaurant();
+                long cost = lookahead[g].getPriceInMinorUnits();
+                lookahead[g] = null;
+                Integer restaurantNode = restaurantNodes.get(r);
+                if (restaurantNode == null) {
+                    restaurantNode = network.addNode();
+                    restaurantNodes.put(r, restaurantNode);
+                    int freeSlots = Math.max(0, r.getMaxOrders() - r.getCurrentOrderCount());
+                    network.addEdge(restaurantNode, sink, freeSlots, 0);
+                }
+                int demand = batch.bySignature.get(signatures.get(g)).size();
+                int edge = network.addEdge(node, restaurantNode, demand, cost);
+                routes.get(g).add(edge);
+                routeSelections.get(g).add(new RestaurantSelection(r, cost, cost));
+                return edge;
+            }
+        };
+        long solveStartNanos = batch.metrics.startTimer();
+        network.solve(source, sink, cheapestRestaurants);
+        batch.metrics.selectionFinished(solveStartNanos);
+        List<List<Integer>> unassignedBySignature = new ArrayList<>(signatures.size());
+        for (int g = 0; g < signatures.size(); g++) {
+            Map<String, Integer> items = signatures.get(g);
+            Iterator<Integer> pending = batch.bySignature.get(items).iterator();
+            List<Integer> unassigned = new ArrayList<>();
+            for (int e = 0; e < routes.get(g).size(); e++) {
+                RestaurantSelection selection = routeSelections.get(g).get(e);
+                for (int n = network.flow(routes.get(g).get(e)); n > 0 && pending.hasNext(); n--) {
+                    int i = pending.next();
+                    if (!batch.orders[i].assignToRestaurant(selection)) {
+                        unassigned.add(i);
+                        continue;
+                    }
+                    batch.accept(i, selection.getRestaurant(), items);
+                }
+            }
+            pending.forEachRemaining(unassigned::add);
+            unassignedBySignature.add(unassigned);
+        }
+        for (int g = 0; g < signatures.size(); g++) {
+            if (!unassignedBySignature.get(g).isEmpty()) {
+                batch.assignByRanking(signatures.get(g), unassignedBySignature.get(g), currentStrategy);
+            }
+        }
+        return batch.results();
+    }
+
+    private class OrderBatch {
+        private final List<OrderRequest> requests;
+        private final Order[] orders;
+        private final OrderResult[] results;
+        private final Map<Map<String, Integer>, List<Integer>> bySignature;
+        private final OrderMetrics metrics;
+        private final long startNanos;
+
+        OrderBatch(List<OrderRequest> requests) {
+            if (requests == null)
+                throw new IllegalArgumentException("Order requests cannot be null");
+            this.requests = requests;
+            this.orders = new Order[requests.size()];
+            this.results = new OrderResult[requests.size()];
+            this.bySignature = new LinkedHashMap<>();
+            this.metrics = FoodOrderingSystem.this.metrics;
+            this.startNanos = metrics.startTimer();
+            for (int i = 0; i < requests.size(); i++) {
+                OrderRequest request = requests.get(i);
+                try {
+                    if (request == null)
+                        throw new IllegalArgumentException("Order request cannot be null");
+                    Order.validate(request.getUserName(), request.getItems());
+                    orders[i] = new Order(orderIdGenerator.nextId(), request.getUserName(), request.getItems());
+                    bySignature.computeIfAbsent(orders[i].getItems(), k -> new ArrayList<>()).add(i);
+                } catch (IllegalArgumentException e) {
+                    results[i] = OrderResult.failed(request, null, e.getMessage());
+                }
+            }
+        }
+
+        void assignByRanking(Map<String, Integer> items, List<Integer> indexes, SelectionStrategy strategy) {
+            List<Restaurant> eligibleRestaurants = restaurantIndex.findEligible(items);
+            long selectionStartNanos = metrics.startTimer();
+            List<RestaurantSelection> ranked = eligibleRestaurants.isEmpty() ? Collections.emptyList()
+                    : strategy.rankRestaurants(eligibleRestaurants, items, indexes.size());
+            metrics.selectionFinished(selectionStartNanos);
+            boolean strategyFailed = !eligibleRestaurants.isEmpty() && ranked.isEmpty();
+            List<Restaurant> unranked = eligibleRestaurants;
+            int requested = indexes.size();
+            int cursor = 0;
+            int remainingOrders = indexes.size();
+            boolean exhausted = false;
+            for (int i : indexes) {
+                metrics.eligibleRestaurantsFound(eligibleRestaurants.size());
+                while (true) {
+                    while (cursor < ranked.size() && !orders[i].assignToRestaurant(ranked.get(cursor))) {
+                        cursor++;
+                    }
+                    if (cursor < ranked.size() || ranked.size() < requested || exhausted) {
+                        break;
+                    }
+                    unranked = withoutRanked(unranked, ranked);
+                    if (unranked.isEmpty()) {
+                        exhausted = true;
+                        break;
+                    }
+                    requested = remainingOrders;
+                    ranked = strategy.rankRestaurants(unranked, items, requested);
+                    cursor = 0;
+                }
+                remainingOrders--;
+                if (cursor < ranked.size()) {
+                    accept(i, ranked.get(cursor).getRestaurant(), items);
+                } else if (strategyFailed) {
+                    reject(i, "Cannot assign the order - strategy failed to select restaurant");
+                } else {
+                    queueOrReject(i);
+                }
+            }
+        }
+
+        private List<Restaurant> withoutRanked(List<Restaurant> restaurants, List<RestaurantSelection> ranked) {
+            Set<Restaurant> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (RestaurantSelection selection : ranked) {
+                taken.add(selection.getRestaurant());
+            }
+            List<Restaurant> rest = new ArrayList<>();
+            for (Restaurant r : restaurants) {
+                if (!taken.contains(r)) {
+                    rest.add(r);
+                }
+            }
+            return rest;
+        }
+
+        void accept(int i, Restaurant restaurant, Map<String, Integer> items) {
+            try {
+                acceptOrder(orders[i], restaurant, items, metrics, startNanos);
+                results[i] = OrderResult.accepted(requests.get(i), orders[i]);
+            } catch (RuntimeException e) {
+                results[i] = OrderResult.failed(requests.get(i), orders[i], e.getMessage());
+            }
+        }
+
+        void queueOrReject(int i) {
+            try {
+                FoodOrderingSystem.this.queueOrReject(orders[i], metrics, startNanos);
+                results[i] = orders[i].getStatus() == OrderStatus.ACCEPTED
+                        ? OrderResult.accepted(requests.get(i), orders[i])
+                        : OrderResult.queued(requests.get(i), orders[i]);
+            } catch (OrderProcessingException | RuntimeException e) {
+                results[i] = OrderResult.failed(requests.get(i), orders[i], e.getMessage());
+            }
+        }
+
+        void reject(int i, String reason) {
+            try {
+                rejectOrder(orders[i], metrics, startNanos);
+                results[i] = OrderResult.failed(requests.get(i), orders[i], reason);
+            } catch (RuntimeException e) {
+                results[i] = OrderResult.failed(requests.get(i), orders[i], e.getMessage());
+            }
+        }
+
+        List<OrderResult> results() {
+            return Arrays.asList(results);
+        }
+    }
+
+    private Order acceptOrder(Order order, Restaurant selectedRestaurant, Map<String, Integer> items,
+            OrderMetrics metrics, long startNanos) {
+        long stamp = enterJournaledChange();
+        try {
+            if (journal != null) {
+                try {
+                    journal.orderAccepted(order.getOrderId(), order.getUserName(), items,
+                            selectedRestaurant.getName(), order.getTotalCostInMinorUnits());
+                } catch (RuntimeException e) {
+                    order.markRejected();
+                    selectedRestaurant.completeOrder();
+                    throw e;
+                }
+            }
+            orders.putLive(order);
+        } finally {
+            exitJournaledChange(stamp);
+        }
+        metrics.orderAccepted(startNanos);
+        eventLogger.orderAssigned(order.getOrderId(), selectedRestaurant.getName(),
+                order.getTotalCostInMinorUnits());
+        return order;
+    }
+
+    private void rejectOrder(Order order, OrderMetrics metrics, long startNanos) {
+        order.markRejected();
+        long stamp = enterJournaledChange();
+        try {
+            if (journal != null) {
+                journal.orderRejected(order.getOrderId(), order.getUserName(), order.getItems());
+            }
+            orders.retire(order);
+        } finally {
+            exitJournaledChange(stamp);
+        }
+        metrics.orderRejected(startNanos);
+        eventLogger.orderRejected(order.getOrderId());
+    }
+
+    public void markOrderCompleted(long orderId) throws OrderProcessingException {
+        OrderMetrics metrics = this.metrics;
+        long startNanos = metrics.startTimer();
+        Order order = orders.get(orderId)
+                .orElseThrow(() -> new OrderProcessingException("Order not found: " + orderId));
+        long stamp = enterJournaledChange();
+        try {
+            synchronized (order) {
+                if (order.getStatus() != OrderStatus.ACCEPTED) {
+                    throw new IllegalStateException("Only accepted orders can be completed");
+                }
+                if (journal != null) {
+                    journal.orderCompleted(orderId);
+                }
+                order.markCompleted();
+            }
+            orders.retire(order);
+        } finally {
+            exitJournaledChange(stamp);
+        }
+        metrics.orderCompleted(startNanos);
+        eventLogger.orderCompleted(orderId);
+        dispatchQueued(order.getAssignedRestaurant());
+    }
+
+    public CompletableFuture<Void> markOrderCompletedAsync(long orderId) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    markOrderCompleted(orderId);
+                } catch (OrderProcessingException e) {
+                    throw new CompletionException(e);
+                }
+            }, asyncExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(asyncRejected(e));
+        }
+    }
+
+    private synchronized ExecutorService asyncExecutor() {
+        if (closed) {
+            throw new RejectedExecutionException("food ordering system is closed");
+        }
+        if (asyncExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(ASYNC_QUEUE_CAPACITY), task -> {
+                        Thread thread = new Thread(task, "order-async-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (task, executor) -> {
+                        throw new RejectedExecutionException("async queue is full");
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            asyncExecutor = pool;
+        }
+        return asyncExecutor;
+    }
+
+    private static OrderProcessingException asyncRejected(RejectedExecutionException e) {
+        OrderProcessingException rejected = new OrderProcessingException(
+                "Cannot accept async request - " + e.getMessage());
+        rejected.initCause(e);
+        return rejected;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ExecutorService executor : new ExecutorService[] { asyncExecutor, snapshotScheduler, admissionTimer }) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    public Optional<Order> findOrder(long orderId) {
+        return orders.get(orderId);
+    }
+
+    public List<Order> getOrdersByStatus(OrderStatus status) {
+        if (status == null)
+            throw new IllegalArgumentException("Order status cannot be null");
+        return orders.findByStatus(status);
+    }
+
+    public List<Order> getOrdersByUser(String userName) {
+        if (userName == null || userName.trim().isEmpty())
+            throw new IllegalArgumentException("User name cannot be null or empty");
+        return orders.findByUser(userName);
+    }
+
+    public List<Order> getOrdersByRestaurant(String restaurantName) throws RestaurantNotFoundException {
+        return orders.findByRestaurant(findRestaurant(restaurantName).getOrdinal(), null);
+    }
+
+    public List<Order> getOrdersByRestaurant(String restaurantName, OrderStatus status)
+            throws RestaurantNotFoundException {
+        if (status == null)
+            throw new IllegalArgumentException("Order status cannot be null");
+        return orders.findByRestaurant(findRestaurant(restaurantName).getOrdinal(), status);
+    }
+
+    public List<Restaurant> getRestaurants() {
+        return new ArrayList<>(restaurants.values());
     }
 
     public void displayRestaurantStatus() {
@@ -360,7 +5064,7 @@ class FoodOrderingSystem {
 
     public void displayOrderStatus() {
         System.out.println("\n=== Order Status ===");
-        for (Order o : orders.values()) {
+        for (Order o : orders.allOrders()) {
             System.out.println("Order " + o.getOrderId() + " - " + o.getUserName() + " - Status: " + o.getStatus()
                     + (o.getAssignedRestaurant() != null ? " - Restaurant: " + o.getAssignedRestaurant().getName()
                             : ""));
@@ -0,0 +1,61 @@
+package thinkifytest;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchAssignmentBenchmark {
+    private static final int CATALOG_SIZE = 30;
+
+    @Param({ "1000x500", "10000x2000", "20000x5000" })
+    public String restaurantsByOrders;
+
+    private FoodOrderingSystem system;
+    private List<OrderRequest> requests;
+
+    @Setup(Level.Iteration)
+    public void buildSystem() throws RestaurantNotFoundException {
+        String[] size = restaurantsByOrders.split("x");
+        int restaurantCount = Integer.parseInt(size[0]);
+        int orderCount = Integer.parseInt(size[1]);
+        Random random = new Random(42);
+        system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        for (int r = 0; r < restaurantCount; r++) {
+            String name = "R" + r;
+            system.onboardRestaurant(name, 1 + random.nextInt(5), random.nextInt(51) / 10.0);
+            for (int i = 0; i < CATALOG_SIZE; i++) {
+                if (random.nextInt(4) == 0) {
+                    system.addMenuItemToRestaurant(name, "Item" + i, BigDecimal.valueOf(1 + random.nextInt(50)));
+                }
+            }
+        }
+        requests = new ArrayList<>(orderCount);
+        for (int o = 0; o < orderCount; o++) {
+            Map<String, Integer> basket = new HashMap<>();
+            basket.put("Item" + random.nextInt(CATALOG_SIZE), 1 + random.nextInt(2));
+            if (random.nextBoolean()) {
+                basket.put("Item" + random.nextInt(CATALOG_SIZE), 1);
+            }
+            requests.add(new OrderRequest("user" + o, basket));
+        }
+    }
+
+    @Benchmark
+    public List<OrderResult> placeOrdersOptimally() {
+        return system.placeOrdersOptimally(requests);
+    }
+
+    @Benchmark
+    public List<OrderResult> placeOrdersGreedily() {
+        return system.placeOrders(requests);
+    }
+}
@@ -0,0 +1,104 @@
+package thinkifytest;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderPlacementBenchmark {
+    private static final int MAX_ORDERS_PER_RESTAURANT = 1024;
+
+    @Param({ "100", "10000" })
+    public int restaurantCount;
+
+    @Param({ "20", "200" })
+    public int menuSize;
+
+    @Param({ "1", "5" })
+    public int basketSize;
+
+    private FoodOrderingSystem system;
+    private List<Restaurant> restaurants;
+    private Map<String, Integer> basket;
+    private SelectionStrategy lowestCost;
+    private SelectionStrategy highestRating;
+
+    @Setup(Level.Iteration)
+    public void buildSystem() throws RestaurantNotFoundException {
+        Random random = new Random(42);
+        int catalogSize = menuSize * 4;
+        system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        for (int r = 0; r < restaurantCount; r++) {
+            String name = "R" + r;
+            system.onboardRestaurant(name, MAX_ORDERS_PER_RESTAURANT, random.nextInt(51) / 10.0);
+            for (int i = 0; i < menuSize; i++) {
+                String item = "Item" + random.nextInt(catalogSize);
+                system.addMenuItemToRestaurant(name, item, BigDecimal.valueOf(10 + random.nextInt(490)));
+            }
+        }
+        restaurants = new ArrayList<>();
+        Map<String, Integer> candidateBasket = new HashMap<>();
+        for (int i = 0; i < basketSize; i++) {
+            candidateBasket.put("Item" + i, 1 + random.nextInt(3));
+        }
+        for (int r = 0; r < restaurantCount; r++) {
+            String name = "R" + r;
+            for (String item : candidateBasket.keySet()) {
+                system.addMenuItemToRestaurant(name, item, BigDecimal.valueOf(10 + random.nextInt(490)));
+            }
+        }
+        basket = candidateBasket;
+        lowestCost = new LowestCostStrategy();
+        highestRating = new HighestRatingStrategy();
+        restaurants = system.getRestaurants();
+    }
+
+    @Benchmark
+    public Order placeOrderLowestCost() throws OrderProcessingException {
+        return placeAndComplete(lowestCost);
+    }
+
+    @Benchmark
+    public Order placeOrderHighestRating() throws OrderProcessingException {
+        return placeAndComplete(highestRating);
+    }
+
+    private Order placeAndComplete(SelectionStrategy strategy) throws OrderProcessingException {
+        Order order = system.placeOrder("bench", basket, strategy);
+        system.markOrderCompleted(order.getOrderId());
+        return order;
+    }
+
+    @Benchmark
+    public void calculateTotalCost(Blackhole blackhole) {
+        for (Restaurant r : restaurants) {
+            blackhole.consume(r.calculateTotalCostInMinorUnits(basket));
+        }
+    }
+
+    @Benchmark
+    public void hasAllItems(Blackhole blackhole) {
+        for (Restaurant r : restaurants) {
+            blackhole.consume(r.hasAllItems(basket));
+        }
+    }
+
+    @Benchmark
+    public Optional<RestaurantSelection> lowestCostStrategy() {
+        return lowestCost.selectRestaurant(restaurants, basket);
+    }
+
+    @Benchmark
+    public Optional<RestaurantSelection> highestRatingStrategy() {
+        return highestRating.selectRestaurant(restaurants, basket);
+    }
+}
@@ -0,0 +1,80 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AdmissionQueueTest {
+    private FoodOrderingSystem system;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        system.onboardRestaurant("R", 1, 4);
+        system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN);
+    }
+
+    @Test
+    void queuedOrderIsVisibleAndAdmittedWhenASlotFrees() throws Exception {
+        system.enableAdmissionQueue(4, Duration.ofMinutes(1));
+        Order first = system.placeOrder("alice", Map.of("Idli", 1), null);
+        Order queued = system.placeOrder("bob", Map.of("Idli", 2), null);
+        assertEquals(OrderStatus.PENDING, queued.getStatus());
+        assertSame(queued, system.findOrder(queued.getOrderId()).orElseThrow());
+        assertEquals(List.of(queued), system.getOrdersByStatus(OrderStatus.PENDING));
+        assertEquals(List.of(queued), system.getOrdersByUser("bob"));
+        assertThrows(IllegalStateException.class, () -> system.markOrderCompleted(queued.getOrderId()));
+
+        CompletableFuture<Order> admission = system.awaitAdmission(queued.getOrderId());
+        assertFalse(admission.isDone());
+        system.markOrderCompleted(first.getOrderId());
+        assertSame(queued, admission.get(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.ACCEPTED, queued.getStatus());
+        assertTrue(system.getOrdersByStatus(OrderStatus.PENDING).isEmpty());
+        assertEquals(0, system.getQueuedOrderCount());
+        system.markOrderCompleted(queued.getOrderId());
+        assertEquals(OrderStatus.COMPLETED, system.awaitAdmission(queued.getOrderId()).get().getStatus());
+    }
+
+    @Test
+    void timedOutOrderFailsItsAdmission() throws Exception {
+        system.enableAdmissionQueue(4, Duration.ofMillis(20));
+        system.placeOrder("alice", Map.of("Idli", 1), null);
+        Order queued = system.placeOrder("bob", Map.of("Idli", 1), null);
+        ExecutionException timedOut = assertThrows(ExecutionException.class,
+                () -> system.awaitAdmission(queued.getOrderId()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(OrderProcessingException.class, timedOut.getCause());
+        assertEquals(OrderStatus.REJECTED, queued.getStatus());
+        assertTrue(system.getOrdersByStatus(OrderStatus.PENDING).isEmpty());
+        assertEquals(1, system.getOrdersByStatus(OrderStatus.REJECTED).size());
+    }
+
+    @Test
+    void batchPlacementQueuesOrdersThatFindNoFreeRestaurant() throws Exception {
+        system.enableAdmissionQueue(1, Duration.ofMinutes(1));
+        List<OrderResult> results = system.placeOrdersOptimally(List.of(
+                new OrderRequest("alice", Map.of("Idli", 1)),
+                new OrderRequest("bob", Map.of("Idli", 1)),
+                new OrderRequest("carol", Map.of("Idli", 1))));
+        assertTrue(results.get(0).isAccepted());
+        assertTrue(results.get(1).isQueued());
+        assertFalse(results.get(1).isAccepted());
+        assertFalse(results.get(2).isAccepted());
+        assertFalse(results.get(2).isQueued());
+        assertEquals(OrderStatus.REJECTED, results.get(2).getOrder().getStatus());
+
+        CompletableFuture<Order> admission = system.awaitAdmission(results.get(1).getOrder().getOrderId());
+        system.markOrderCompleted(results.get(0).getOrder().getOrderId());
+        assertEquals(OrderStatus.ACCEPTED, admission.get(5, TimeUnit.SECONDS).getStatus());
+    }
+}
@@ -0,0 +1,43 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncEventLoggerTest {
+    @Test
+    void everyEventPublishedAroundCloseIsWrittenOrCountedAsDropped() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            AsyncEventLogger logger = new AsyncEventLogger(sink, 1024, AsyncEventLogger.Format.LINE);
+            AtomicLong published = new AtomicLong();
+            CountDownLatch started = new CountDownLatch(4);
+            List<Thread> publishers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread publisher = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 20_000; i++) {
+                        logger.orderCompleted(i);
+                        published.incrementAndGet();
+                    }
+                });
+                publisher.start();
+                publishers.add(publisher);
+            }
+            started.await();
+            logger.close();
+            for (Thread publisher : publishers) {
+                publisher.join();
+            }
+            long written = sink.toString(StandardCharsets.UTF_8).lines().count();
+            assertEquals(published.get(), written + logger.getDroppedEvents(), "round " + round);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncOrderTest {
+    @Test
+    void saturatedExecutorFailsTheFutureInsteadOfBlockingTheCaller() throws Exception {
+        FoodOrderingSystem system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        system.onboardRestaurant("R", 100_000, 4);
+        system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN);
+        CountDownLatch release = new CountDownLatch(1);
+        SelectionStrategy blocking = (eligible, items) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new LowestCostStrategy().selectRestaurant(eligible, items);
+        };
+        List<CompletableFuture<Order>> futures = new ArrayList<>();
+        CompletableFuture<Order> rejected = null;
+        for (int i = 0; i < 100_000 && rejected == null; i++) {
+            CompletableFuture<Order> future = system.placeOrderAsync("user" + i, Map.of("Idli", 1), blocking);
+            if (future.isCompletedExceptionally()) {
+                rejected = future;
+            } else {
+                futures.add(future);
+            }
+        }
+        assertNotNull(rejected);
+        ExecutionException failure = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(OrderProcessingException.class, failure.getCause());
+
+        release.countDown();
+        for (CompletableFuture<Order> future : futures) {
+            assertEquals(OrderStatus.ACCEPTED, future.get(10, TimeUnit.SECONDS).getStatus());
+        }
+        system.close();
+        assertThrows(ExecutionException.class, () -> system.markOrderCompletedAsync(1).get());
+    }
+}
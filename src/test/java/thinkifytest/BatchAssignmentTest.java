@@ -0,0 +1,96 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BatchAssignmentTest {
+    private static FoodOrderingSystem build(long seed, int restaurants, int items) throws Exception {
+        Random random = new Random(seed);
+        FoodOrderingSystem system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        for (int r = 0; r < restaurants; r++) {
+            system.onboardRestaurant("R" + r, 1 + random.nextInt(2), 3);
+            for (int i = 0; i < items; i++) {
+                if (random.nextBoolean()) {
+                    system.addMenuItemToRestaurant("R" + r, "Item" + i, BigDecimal.valueOf(1 + random.nextInt(20)));
+                }
+            }
+        }
+        return system;
+    }
+
+    private static List<OrderRequest> requests(long seed, int orders, int items) {
+        Random random = new Random(seed * 31);
+        List<OrderRequest> requests = new ArrayList<>();
+        for (int o = 0; o < orders; o++) {
+            Map<String, Integer> basket = new HashMap<>();
+            basket.put("Item" + random.nextInt(items), 1 + random.nextInt(2));
+            if (random.nextBoolean()) {
+                basket.put("Item" + random.nextInt(items), 1);
+            }
+            requests.add(new OrderRequest("user" + o, basket));
+        }
+        return requests;
+    }
+
+    private static long[] best(List<OrderRequest> requests, int next, List<Restaurant> restaurants, int[] used,
+            long accepted, long cost) {
+        if (next == requests.size()) {
+            return new long[] { accepted, cost };
+        }
+        long[] best = best(requests, next + 1, restaurants, used, accepted, cost);
+        for (int r = 0; r < restaurants.size(); r++) {
+            long price = restaurants.get(r).priceOrderInMinorUnits(requests.get(next).getItems());
+            if (price == Restaurant.INELIGIBLE || used[r] == restaurants.get(r).getMaxOrders()) {
+                continue;
+            }
+            used[r]++;
+            long[] candidate = best(requests, next + 1, restaurants, used, accepted + 1, cost + price);
+            used[r]--;
+            if (candidate[0] > best[0] || (candidate[0] == best[0] && candidate[1] < best[1])) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    void optimalPlacementMatchesExhaustiveSearch() throws Exception {
+        for (long seed = 1; seed <= 150; seed++) {
+            List<OrderRequest> requests = requests(seed, 6, 4);
+            FoodOrderingSystem system = build(seed, 4, 4);
+            long[] expected = best(requests, 0, system.getRestaurants(), new int[4], 0, 0);
+            long accepted = 0;
+            long cost = 0;
+            for (OrderResult result : system.placeOrdersOptimally(requests)) {
+                if (result.isAccepted()) {
+                    accepted++;
+                    cost += result.getOrder().getTotalCostInMinorUnits();
+                }
+            }
+            assertArrayEquals(expected, new long[] { accepted, cost }, "seed " + seed);
+        }
+    }
+
+    @Test
+    void invalidRequestsDoNotConsumeOrderIds() throws Exception {
+        FoodOrderingSystem system = build(1, 2, 2);
+        system.addMenuItemToRestaurant("R0", "Item0", BigDecimal.ONE);
+        assertThrows(IllegalArgumentException.class, () -> system.placeOrder(" ", Map.of("Item0", 1), null));
+        assertThrows(IllegalArgumentException.class, () -> system.placeOrder("alice", Map.of("Item0", 0), null));
+        assertEquals(1, system.placeOrder("alice", Map.of("Item0", 1), null).getOrderId());
+        List<OrderResult> results = system.placeOrdersOptimally(List.of(new OrderRequest(null, Map.of("Item0", 1)),
+                new OrderRequest("bob", Map.of()), new OrderRequest("carol", Map.of("Item0", 1))));
+        assertNull(results.get(0).getOrder());
+        assertNull(results.get(1).getOrder());
+        assertEquals(2, results.get(2).getOrder().getOrderId());
+    }
+}
@@ -0,0 +1,238 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalReplayTest {
+    @TempDir
+    Path dir;
+
+    interface JournalFactory {
+        OrderJournal open() throws IOException;
+    }
+
+    private JournalFactory wal(FsyncPolicy policy) {
+        return () -> new WriteAheadLog(dir.resolve("orders.wal"), policy);
+    }
+
+    private JournalFactory mapped() {
+        return () -> new MappedOrderJournal(dir.resolve("journal"), FsyncPolicy.NEVER, 4096);
+    }
+
+    private static FoodOrderingSystem open(OrderJournal journal) throws IOException {
+        FoodOrderingSystem system = new FoodOrderingSystem(new SequentialOrderIdGenerator(), journal);
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        return system;
+    }
+
+    private static Restaurant restaurant(FoodOrderingSystem system, String name) {
+        return system.getRestaurants().stream().filter(r -> r.getName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private void assertReplayRestoresState(JournalFactory factory) throws Exception {
+        long accepted;
+        long completed;
+        try (OrderJournal journal = factory.open()) {
+            FoodOrderingSystem system = open(journal);
+            system.onboardRestaurant("R1", 2, 4.5);
+            system.onboardRestaurant("R2", 5, 3.0);
+            system.addMenuItemToRestaurant("R1", "Idli", new BigDecimal("10.50"));
+            system.addMenuItemToRestaurant("R2", "Idli", new BigDecimal("12"));
+            system.updateMenuItemPrice("R2", "Idli", new BigDecimal("9"));
+            accepted = system.placeOrder("alice", Map.of("Idli", 2), null).getOrderId();
+            completed = system.placeOrder("bob", Map.of("Idli", 1), null).getOrderId();
+            system.markOrderCompleted(completed);
+            assertThrows(OrderProcessingException.class, () -> system.placeOrder("carol", Map.of("Dosa", 1), null));
+        }
+        try (OrderJournal journal = factory.open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(new BigDecimal("9.00"), restaurant(system, "R2").getMenu().get("Idli").getPrice());
+            Order order = system.findOrder(accepted).orElseThrow();
+            assertEquals(OrderStatus.ACCEPTED, order.getStatus());
+            assertEquals("R2", order.getAssignedRestaurant().getName());
+            assertEquals(1800, order.getTotalCostInMinorUnits());
+            assertEquals(OrderStatus.COMPLETED, system.findOrder(completed).orElseThrow().getStatus());
+            assertEquals(1, system.getOrdersByStatus(OrderStatus.REJECTED).size());
+            assertEquals(1, restaurant(system, "R2").getCurrentOrderCount());
+            assertEquals(0, restaurant(system, "R1").getCurrentOrderCount());
+            assertTrue(system.placeOrder("dave", Map.of("Idli", 1), null).getOrderId() > completed + 1);
+        }
+    }
+
+    @Test
+    void writeAheadLogReplayRestoresState() throws Exception {
+        assertReplayRestoresState(wal(FsyncPolicy.EVERY_RECORD));
+    }
+
+    @Test
+    void groupCommitLogReplayRestoresState() throws Exception {
+        assertReplayRestoresState(wal(FsyncPolicy.GROUP_COMMIT));
+    }
+
+    @Test
+    void mappedJournalReplayRestoresStateAcrossSegments() throws Exception {
+        assertReplayRestoresState(mapped());
+        try (OrderJournal journal = mapped().open()) {
+            FoodOrderingSystem system = open(journal);
+            for (int i = 0; i < 200; i++) {
+                system.markOrderCompleted(system.placeOrder("user" + i, Map.of("Idli", 1), null).getOrderId());
+            }
+        }
+        try (OrderJournal journal = mapped().open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(201, system.getOrdersByStatus(OrderStatus.COMPLETED).size());
+        }
+    }
+
+    @Test
+    void replayKeepsCapacityWhenSlotIsReusedAfterCompletion() throws Exception {
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            system.onboardRestaurant("R", 1, 4);
+            system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN);
+            system.markOrderCompleted(system.placeOrder("alice", Map.of("Idli", 1), null).getOrderId());
+            system.placeOrder("bob", Map.of("Idli", 1), null);
+        }
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(1, restaurant(system, "R").getCurrentOrderCount());
+            assertEquals(1, system.getOrdersByStatus(OrderStatus.ACCEPTED).size());
+        }
+    }
+
+    @Test
+    void failedCompletionAppendKeepsOrderAcceptedAndSlotHeld() throws Exception {
+        long orderId;
+        try (FailingJournal journal = new FailingJournal(wal(FsyncPolicy.NEVER).open())) {
+            FoodOrderingSystem system = open(journal);
+            system.onboardRestaurant("R", 1, 4);
+            system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN);
+            orderId = system.placeOrder("alice", Map.of("Idli", 1), null).getOrderId();
+            journal.failCompletions = true;
+            assertThrows(UncheckedIOException.class, () -> system.markOrderCompleted(orderId));
+            assertEquals(OrderStatus.ACCEPTED, system.findOrder(orderId).orElseThrow().getStatus());
+            assertEquals(1, restaurant(system, "R").getCurrentOrderCount());
+            assertThrows(OrderProcessingException.class, () -> system.placeOrder("bob", Map.of("Idli", 1), null));
+        }
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(OrderStatus.ACCEPTED, system.findOrder(orderId).orElseThrow().getStatus());
+            assertEquals(1, restaurant(system, "R").getCurrentOrderCount());
+        }
+    }
+
+    @Test
+    void failedOnboardingAppendLeavesNoRestaurantBehind() throws Exception {
+        try (FailingJournal journal = new FailingJournal(wal(FsyncPolicy.NEVER).open())) {
+            FoodOrderingSystem system = open(journal);
+            journal.failOnboarding = true;
+            assertThrows(UncheckedIOException.class, () -> system.onboardRestaurant("R", 1, 4));
+            assertTrue(system.getRestaurants().isEmpty());
+            assertThrows(RestaurantNotFoundException.class,
+                    () -> system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN));
+            journal.failOnboarding = false;
+            system.onboardRestaurant("R", 1, 4);
+            assertEquals(0, restaurant(system, "R").getOrdinal());
+        }
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            assertEquals(1, open(journal).getRestaurants().size());
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnOpen() throws Exception {
+        Path log = dir.resolve("orders.wal");
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            system.onboardRestaurant("R", 3, 4);
+            system.addMenuItemToRestaurant("R", "Idli", BigDecimal.TEN);
+            system.placeOrder("alice", Map.of("Idli", 1), null);
+            system.placeOrder("bob", Map.of("Idli", 1), null);
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(1, system.getOrdersByStatus(OrderStatus.ACCEPTED).size());
+            system.placeOrder("carol", Map.of("Idli", 1), null);
+        }
+        try (OrderJournal journal = wal(FsyncPolicy.NEVER).open()) {
+            FoodOrderingSystem system = open(journal);
+            assertEquals(2, system.getOrdersByStatus(OrderStatus.ACCEPTED).size());
+            assertEquals(2, restaurant(system, "R").getCurrentOrderCount());
+        }
+    }
+
+    private static final class FailingJournal implements OrderJournal {
+        private final OrderJournal delegate;
+        volatile boolean failCompletions;
+        volatile boolean failOnboarding;
+
+        FailingJournal(OrderJournal delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long position() {
+            return delegate.position();
+        }
+
+        @Override
+        public void replay(JournalRecordHandler handler, long fromPosition) throws IOException {
+            delegate.replay(handler, fromPosition);
+        }
+
+        @Override
+        public void restaurantOnboarded(String name, int maxOrders, double rating) {
+            if (failOnboarding) {
+                throw new UncheckedIOException(new IOException("disk full"));
+            }
+            delegate.restaurantOnboarded(name, maxOrders, rating);
+        }
+
+        @Override
+        public void menuItemAdded(String restaurantName, String itemName, long priceInMinorUnits) {
+            delegate.menuItemAdded(restaurantName, itemName, priceInMinorUnits);
+        }
+
+        @Override
+        public void menuItemPriceUpdated(String restaurantName, String itemName, long priceInMinorUnits) {
+            delegate.menuItemPriceUpdated(restaurantName, itemName, priceInMinorUnits);
+        }
+
+        @Override
+        public void orderAccepted(long orderId, String userName, Map<String, Integer> items, String restaurantName,
+                long totalInMinorUnits) {
+            delegate.orderAccepted(orderId, userName, items, restaurantName, totalInMinorUnits);
+        }
+
+        @Override
+        public void orderRejected(long orderId, String userName, Map<String, Integer> items) {
+            delegate.orderRejected(orderId, userName, items);
+        }
+
+        @Override
+        public void orderCompleted(long orderId) {
+            if (failCompletions) {
+                throw new UncheckedIOException(new IOException("disk full"));
+            }
+            delegate.orderCompleted(orderId);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrderStoreTest {
+    private RestaurantIndex restaurants;
+    private Restaurant restaurant;
+    private OrderStore store;
+
+    @BeforeEach
+    void setUp() {
+        restaurants = new RestaurantIndex();
+        restaurant = restaurants.register("R", 1_000_000, 4);
+        restaurant.addMenuItem("Idli", BigDecimal.TEN);
+        store = new OrderStore(restaurants::get, 8);
+    }
+
+    private Order accepted(long orderId, String userName) {
+        Order order = new Order(orderId, userName, Map.of("Idli", 2));
+        assertTrue(order.assignToRestaurant(restaurant));
+        store.putLive(order);
+        return order;
+    }
+
+    @Test
+    void retiredOrdersAreFoundAcrossSealedAndOpenBlocks() {
+        for (long id = 1; id <= 50; id++) {
+            Order order = accepted(id, "user" + (id % 3));
+            if (id % 5 == 0) {
+                order.markRejected();
+            } else {
+                order.markCompleted();
+            }
+            store.retire(order);
+        }
+        accepted(51, "user0");
+        assertEquals(50, store.retiredCount());
+        assertEquals(1, store.liveCount());
+        for (long id = 1; id <= 50; id++) {
+            assertTrue(store.isRetired(id));
+            Order order = store.get(id).orElseThrow();
+            assertEquals(id, order.getOrderId());
+            assertEquals(id % 5 == 0 ? OrderStatus.REJECTED : OrderStatus.COMPLETED, order.getStatus());
+        }
+        assertFalse(store.isRetired(51));
+        assertEquals(OrderStatus.ACCEPTED, store.get(51).orElseThrow().getStatus());
+        assertFalse(store.get(52).isPresent());
+    }
+
+    @Test
+    void secondaryIndexesCoverBothTiers() {
+        for (long id = 1; id <= 30; id++) {
+            Order order = accepted(id, id % 2 == 0 ? "even" : "odd");
+            if (id <= 20) {
+                order.markCompleted();
+                store.retire(order);
+            }
+        }
+        assertEquals(20, store.findByStatus(OrderStatus.COMPLETED).size());
+        assertEquals(10, store.findByStatus(OrderStatus.ACCEPTED).size());
+        List<Order> even = store.findByUser("even");
+        assertEquals(15, even.size());
+        assertTrue(even.stream().allMatch(o -> o.getOrderId() % 2 == 0));
+        assertEquals(30, store.findByRestaurant(restaurant.getOrdinal(), null).size());
+        assertEquals(10, store.findByRestaurant(restaurant.getOrdinal(), OrderStatus.ACCEPTED).size());
+    }
+
+    @Test
+    void liveStatusIndexFollowsTransitions() {
+        Order pending = new Order(1, "alice", Map.of("Idli", 1));
+        store.putLive(pending);
+        assertEquals(List.of(pending), store.findByStatus(OrderStatus.PENDING));
+        assertTrue(store.findByStatus(OrderStatus.ACCEPTED).isEmpty());
+        assertTrue(pending.assignToRestaurant(restaurant));
+        store.putLive(pending);
+        assertTrue(store.findByStatus(OrderStatus.PENDING).isEmpty());
+        assertEquals(List.of(pending), store.findByStatus(OrderStatus.ACCEPTED));
+        pending.markCompleted();
+        store.retire(pending);
+        assertTrue(store.findByStatus(OrderStatus.ACCEPTED).isEmpty());
+        assertEquals(1, store.findByStatus(OrderStatus.COMPLETED).size());
+    }
+}
@@ -0,0 +1,137 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SelectionStrategyTest {
+    @Test
+    void indexedSelectionAgreesWithListSelection() {
+        Random random = new Random(7);
+        RestaurantIndex index = new RestaurantIndex();
+        for (int i = 0; i < 2000; i++) {
+            Restaurant r = index.register("R" + i, 1 + random.nextInt(2), random.nextInt(51) / 10.0);
+            for (int k = 0; k < 20; k++) {
+                if (random.nextInt(4) == 0) {
+                    r.addMenuItem("Item" + k, BigDecimal.valueOf(1 + random.nextInt(99)));
+                    index.indexMenuItem(r, "Item" + k);
+                }
+            }
+            if (random.nextBoolean()) {
+                r.tryAcceptOrder();
+            }
+        }
+        SelectionStrategy[] strategies = { new HighestRatingStrategy(), new LowestCostStrategy() };
+        for (int q = 0; q < 2000; q++) {
+            Map<String, Integer> basket = q % 2 == 0
+                    ? Map.of("Item" + random.nextInt(20), 1)
+                    : Map.of("Item" + random.nextInt(20), 2, "Item" + (20 + random.nextInt(2)), 1);
+            for (SelectionStrategy strategy : strategies) {
+                Optional<RestaurantSelection> indexed = strategy.selectFromIndex(index, basket);
+                Optional<RestaurantSelection> listed = strategy.selectRestaurant(index.findEligible(basket), basket);
+                if (indexed.isPresent()) {
+                    assertTrue(listed.isPresent());
+                    assertSame(listed.get().getRestaurant(), indexed.get().getRestaurant());
+                    assertEquals(listed.get().getTotalCostInMinorUnits(), indexed.get().getTotalCostInMinorUnits());
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexedPlacementRecordsEligibleRestaurants() throws Exception {
+        FoodOrderingSystem system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        MetricsRegistry registry = new MetricsRegistry();
+        system.setMetricsRegistry(registry);
+        system.setSelectionStrategy(new HighestRatingStrategy());
+        for (int i = 0; i < 3; i++) {
+            system.onboardRestaurant("R" + i, 5, 3 + i);
+            system.addMenuItemToRestaurant("R" + i, "Idli", BigDecimal.TEN);
+        }
+        assertEquals("R2", system.placeOrder("alice", Map.of("Idli", 1), null).getAssignedRestaurant().getName());
+        Histogram eligible = registry.getHistograms().get(OrderMetrics.ELIGIBLE_RESTAURANTS);
+        assertEquals(1, eligible.getTotalCount());
+        assertEquals(3, eligible.getMaxValue());
+    }
+
+    @Test
+    void defaultRankingStopsAfterTheBatchIsServed() throws Exception {
+        FoodOrderingSystem system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        for (int i = 0; i < 1000; i++) {
+            system.onboardRestaurant("R" + i, 1, 1 + (i % 5));
+            system.addMenuItemToRestaurant("R" + i, "Idli", BigDecimal.valueOf(1 + i));
+        }
+        AtomicInteger selections = new AtomicInteger();
+        SelectionStrategy cheapestFirst = (eligible, items) -> {
+            selections.incrementAndGet();
+            return eligible.stream()
+                    .min(Comparator.comparingLong((Restaurant r) -> r.priceOrderInMinorUnits(items)))
+                    .map(r -> new RestaurantSelection(r, r.priceOrderInMinorUnits(items), 0));
+        };
+        List<OrderRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(new OrderRequest("user" + i, Map.of("Idli", 1)));
+        }
+        List<OrderResult> results = system.placeOrders(requests, cheapestFirst);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(results.get(i).isAccepted());
+            assertEquals("R" + i, results.get(i).getOrder().getAssignedRestaurant().getName());
+        }
+        assertEquals(3, selections.get());
+    }
+
+    @Test
+    void groupLargerThanRemainingCapacityIsPartlyRejected() throws Exception {
+        for (boolean optimally : new boolean[] { false, true }) {
+            FoodOrderingSystem system = new FoodOrderingSystem();
+            system.setEventLogger(OrderEventLogger.DISABLED);
+            system.onboardRestaurant("R0", 1, 4);
+            system.onboardRestaurant("R1", 2, 3);
+            system.addMenuItemToRestaurant("R0", "Idli", BigDecimal.TEN);
+            system.addMenuItemToRestaurant("R1", "Idli", BigDecimal.ONE);
+            List<OrderRequest> requests = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                requests.add(new OrderRequest("user" + i, Map.of("Idli", 1)));
+            }
+            List<OrderResult> results = optimally ? system.placeOrdersOptimally(requests)
+                    : system.placeOrders(requests);
+            assertEquals(3, results.stream().filter(OrderResult::isAccepted).count());
+            assertEquals(2, system.getOrdersByStatus(OrderStatus.REJECTED).size());
+        }
+    }
+
+    @Test
+    void rankingSurvivesRestaurantsFillingMidBatch() throws Exception {
+        FoodOrderingSystem system = new FoodOrderingSystem();
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        for (int i = 0; i < 6; i++) {
+            system.onboardRestaurant("R" + i, 1, 4);
+            system.addMenuItemToRestaurant("R" + i, "Idli", BigDecimal.valueOf(1 + i));
+        }
+        List<Restaurant> restaurants = system.getRestaurants();
+        SelectionStrategy fillsEverything = (eligible, items) -> {
+            restaurants.forEach(Restaurant::tryAcceptOrder);
+            return eligible.stream()
+                    .min(Comparator.comparingLong((Restaurant r) -> r.priceOrderInMinorUnits(items)))
+                    .map(r -> new RestaurantSelection(r, r.priceOrderInMinorUnits(items), 0));
+        };
+        List<OrderRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(new OrderRequest("user" + i, Map.of("Idli", 1)));
+        }
+        List<OrderResult> results = system.placeOrders(requests, fillsEverything);
+        assertEquals(3, results.size());
+        assertTrue(results.stream().noneMatch(OrderResult::isAccepted));
+    }
+}
@@ -0,0 +1,146 @@
+package thinkifytest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+    @TempDir
+    Path dir;
+
+    private OrderJournal journal() throws IOException {
+        return new MappedOrderJournal(dir.resolve("journal"), FsyncPolicy.NEVER, 64 * 1024);
+    }
+
+    private FoodOrderingSystem open(OrderJournal journal, boolean withSnapshots) throws IOException {
+        FoodOrderingSystem system = new FoodOrderingSystem(new SequentialOrderIdGenerator(), journal,
+                withSnapshots ? new SnapshotStore(dir.resolve("snapshots")) : null);
+        system.setEventLogger(OrderEventLogger.DISABLED);
+        return system;
+    }
+
+    private static String describe(FoodOrderingSystem system) {
+        return system.getRestaurants().stream()
+                .map(r -> r.getName() + ":" + r.getCurrentOrderCount() + ":" + r.getMenu().keySet())
+                .sorted().collect(Collectors.joining(",")) + "|"
+                + system.getOrdersByUser("user1").size() + "|"
+                + system.getOrdersByStatus(OrderStatus.REJECTED).size() + "|"
+                + Stream.of(OrderStatus.values())
+                        .flatMap(status -> system.getOrdersByStatus(status).stream())
+                        .sorted((a, b) -> Long.compare(a.getOrderId(), b.getOrderId()))
+                        .map(o -> o.getOrderId() + "=" + o.getStatus() + "@" + o.getTotalCostInMinorUnits())
+                        .collect(Collectors.joining(","));
+    }
+
+    private void populate(FoodOrderingSystem system, int orders) throws Exception {
+        for (int i = 0; i < orders; i++) {
+            try {
+                Order order = system.placeOrder("user" + (i % 7), Map.of(i % 11 == 0 ? "Vada" : "Idli", 1), null);
+                if (i % 3 != 0) {
+                    system.markOrderCompleted(order.getOrderId());
+                }
+            } catch (OrderProcessingException e) {
+                List<Order> accepted = system.getOrdersByStatus(OrderStatus.ACCEPTED);
+                for (Order order : accepted) {
+                    system.markOrderCompleted(order.getOrderId());
+                }
+            }
+        }
+    }
+
+    @Test
+    void snapshotWithTailReplayRetiresCoveredSegments() throws Exception {
+        String expected;
+        try (OrderJournal journal = journal()) {
+            FoodOrderingSystem system = open(journal, true);
+            system.onboardRestaurant("R1", 40, 4);
+            system.onboardRestaurant("R2", 40, 3);
+            system.addMenuItemToRestaurant("R1", "Idli", BigDecimal.TEN);
+            system.addMenuItemToRestaurant("R2", "Idli", new BigDecimal("12.5"));
+            system.addMenuItemToRestaurant("R2", "Vada", BigDecimal.ONE);
+            populate(system, 1500);
+            system.takeSnapshot();
+            system.updateMenuItemPrice("R1", "Idli", new BigDecimal("20"));
+            populate(system, 300);
+            expected = describe(system);
+        }
+        try (OrderJournal journal = journal()) {
+            assertEquals(expected, describe(open(journal, true)));
+        }
+        assertFalse(Files.exists(dir.resolve("journal").resolve("orders-00000000.journal")));
+        try (OrderJournal journal = journal()) {
+            assertTrue(journal.startPosition() > 0);
+            assertThrows(IOException.class, () -> open(journal, false));
+        }
+        try (OrderJournal journal = journal()) {
+            FoodOrderingSystem system = open(journal, true);
+            long placed = Stream.of(OrderStatus.values()).mapToLong(s -> system.getOrdersByStatus(s).size()).sum();
+            assertEquals(placed + 1, system.placeOrder("late", Map.of("Idli", 1), null).getOrderId());
+        }
+    }
+
+    @Test
+    void writeAheadLogCheckpointDropsSnapshottedPrefix() throws Exception {
+        Path log = dir.resolve("orders.wal");
+        String expected;
+        long snapshotPosition;
+        try (OrderJournal journal = new WriteAheadLog(log, FsyncPolicy.NEVER)) {
+            FoodOrderingSystem system = open(journal, true);
+            system.onboardRestaurant("R1", 10, 4);
+            system.addMenuItemToRestaurant("R1", "Idli", BigDecimal.TEN);
+            system.addMenuItemToRestaurant("R1", "Vada", BigDecimal.ONE);
+            populate(system, 600);
+            long before = Files.size(log);
+            snapshotPosition = system.takeSnapshot();
+            assertTrue(Files.size(log) < before);
+            populate(system, 200);
+            expected = describe(system);
+        }
+        try (OrderJournal journal = new WriteAheadLog(log, FsyncPolicy.NEVER)) {
+            assertEquals(snapshotPosition, journal.startPosition());
+            FoodOrderingSystem system = open(journal, true);
+            assertEquals(expected, describe(system));
+            populate(system, 50);
+            expected = describe(system);
+        }
+        try (OrderJournal journal = new WriteAheadLog(log, FsyncPolicy.NEVER)) {
+            assertEquals(expected, describe(open(journal, true)));
+        }
+    }
+
+    @Test
+    void corruptSnapshotFallsBackToOlderOne() throws Exception {
+        String expected;
+        try (OrderJournal journal = journal()) {
+            FoodOrderingSystem system = open(journal, true);
+            system.onboardRestaurant("R1", 10, 4);
+            system.addMenuItemToRestaurant("R1", "Idli", BigDecimal.TEN);
+            system.addMenuItemToRestaurant("R1", "Vada", BigDecimal.ONE);
+            populate(system, 600);
+            system.takeSnapshot();
+            populate(system, 600);
+            system.takeSnapshot();
+            expected = describe(system);
+        }
+        Path latest;
+        try (Stream<Path> files = Files.list(dir.resolve("snapshots"))) {
+            latest = files.max(Path::compareTo).orElseThrow();
+        }
+        byte[] content = Files.readAllBytes(latest);
+        content[content.length / 2] ^= 0x5A;
+        Files.write(latest, content);
+        try (OrderJournal journal = journal()) {
+            assertEquals(expected, describe(open(journal, true)));
+        }
+    }
+}